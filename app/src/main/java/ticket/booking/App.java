@@ -1,17 +1,33 @@
 package ticket.booking;
 
+import ticket.booking.entities.SeatAvailability;
 import ticket.booking.entities.Train;
 import ticket.booking.entities.User;
+import ticket.booking.services.BookingHistoryService;
 import ticket.booking.services.UserBookingService;
+import ticket.booking.services.UserImportService;
 import ticket.booking.util.UserServiceUtil;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
 public class App {
 
+    private static final int HISTORY_PAGE_SIZE = 10;
+
+    public String getGreeting() {
+        return "Welcome to Train Booking System";
+    }
+
     public static void main(String[] args) {
-        System.out.println("Welcome to Train Booking System");
+        // Bulk import mode: --import-users <file.csv|file.json> [bcryptCost]
+        if (args.length >= 2 && args[0].equals("--import-users")) {
+            importUsers(args);
+            return;
+        }
+
+        System.out.println(new App().getGreeting());
 
         Scanner scanner = new Scanner(System.in);
         int option = 0;
@@ -83,7 +99,22 @@ public class App {
                         break;
                     }
                     System.out.println("Your bookings:");
-                    userBookingService.fetchBookings();
+                    String cursor = null;
+                    do {
+                        BookingHistoryService.Page page = userBookingService.fetchBookingsPage(
+                                cursor, HISTORY_PAGE_SIZE, null, null, null);
+                        if (cursor == null && page.getTickets().isEmpty()) {
+                            System.out.println("No bookings found.");
+                        }
+                        page.getTickets().forEach(ticket -> System.out.println(ticket.getTicketInfo()));
+                        cursor = page.getNextCursor();
+                        if (cursor != null) {
+                            System.out.println("Enter n for the next page, or anything else to stop:");
+                            if (!scanner.next().equalsIgnoreCase("n")) {
+                                cursor = null;
+                            }
+                        }
+                    } while (cursor != null);
                 }
                 case 4 -> {
                     System.out.println("Enter source station:");
@@ -100,7 +131,8 @@ public class App {
                     System.out.println("Available trains:");
                     int i = 1;
                     for (Train t : trains) {
-                        System.out.println(i++ + ". Train ID: " + t.getTrainId());
+                        System.out.println(i++ + ". Train ID: " + t.getTrainId()
+                                + " (" + t.getAvailability().getFreeSeats() + " seats free)");
                         t.getStationTimes().forEach((station, time) ->
                                 System.out.println("   " + station + " at " + time));
                     }
@@ -124,13 +156,20 @@ public class App {
                         break;
                     }
 
-                    System.out.println("Available seats (0 = empty, 1 = booked):");
+                    SeatAvailability availability = trainSelectedForBooking.getAvailability();
+                    if (availability.isSoldOut()) {
+                        System.out.println("This train is sold out.");
+                        break;
+                    }
+
+                    System.out.println("Available seats (0 = empty, 1 = booked), "
+                            + availability.getFreeSeats() + " free:");
                     List<List<Integer>> seats = userBookingService.fetchSeats(trainSelectedForBooking);
-                    for (List<Integer> row : seats) {
-                        for (Integer seat : row) {
+                    for (int r = 0; r < seats.size(); r++) {
+                        for (Integer seat : seats.get(r)) {
                             System.out.print(seat + " ");
                         }
-                        System.out.println();
+                        System.out.println("  (" + availability.getFreeSeatsInRow(r) + " free)");
                     }
 
                     System.out.println("Enter seat row number:");
@@ -167,4 +206,16 @@ public class App {
 
         scanner.close();
     }
+
+    private static void importUsers(String[] args) {
+        try {
+            int cost = args.length >= 3 ? Integer.parseInt(args[2]) : UserImportService.DEFAULT_BCRYPT_COST;
+            new UserImportService(cost).importUsers(new File(args[1]));
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Invalid BCrypt cost: " + ex.getMessage());
+        } catch (IOException ex) {
+            System.out.println("Error importing users: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
 }
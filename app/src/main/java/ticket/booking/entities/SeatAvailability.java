@@ -0,0 +1,72 @@
+package ticket.booking.entities;
+
+import java.util.List;
+
+/**
+ * Free-seat counters for one train: overall and per row (coach).
+ *
+ * Counters are built once from the seat matrix and then adjusted in O(1) on every book and
+ * cancel, so reading them never walks the matrix. A booking holds its seat for the whole route,
+ * so the free count on any leg of the journey equals the train's free count.
+ */
+public class SeatAvailability {
+
+    private int freeSeats;
+    private final int[] freeSeatsByRow;
+
+    private SeatAvailability(int[] freeSeatsByRow) {
+        this.freeSeatsByRow = freeSeatsByRow;
+        for (int rowFree : freeSeatsByRow) {
+            freeSeats += rowFree;
+        }
+    }
+
+    /**
+     * Builds the counters from a seat matrix (0 = empty, 1 = booked).
+     */
+    public static SeatAvailability of(List<List<Integer>> seats) {
+        int rows = seats == null ? 0 : seats.size();
+        int[] freeByRow = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            for (Integer seat : seats.get(row)) {
+                if (seat != null && seat == 0) {
+                    freeByRow[row]++;
+                }
+            }
+        }
+        return new SeatAvailability(freeByRow);
+    }
+
+    /**
+     * Builds the counters from free-seat counts per row that were computed elsewhere,
+     * e.g. from a packed seat bitmap.
+     */
+    public static SeatAvailability ofFreeCounts(int[] freeByRow) {
+        return new SeatAvailability(freeByRow.clone());
+    }
+
+    public int getFreeSeats() {
+        return freeSeats;
+    }
+
+    public int getFreeSeatsInRow(int row) {
+        return freeSeatsByRow[row];
+    }
+
+    public boolean isSoldOut() {
+        return freeSeats == 0;
+    }
+
+    void seatBooked(int row) {
+        adjust(row, -1);
+    }
+
+    void seatReleased(int row) {
+        adjust(row, 1);
+    }
+
+    private void adjust(int row, int delta) {
+        freeSeats += delta;
+        freeSeatsByRow[row] += delta;
+    }
+}
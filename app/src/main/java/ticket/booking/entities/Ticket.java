@@ -2,6 +2,8 @@ package ticket.booking.entities;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import ticket.booking.util.StationDictionary;
+
 import java.util.Map;
 
 public class Ticket {
@@ -32,13 +34,13 @@ public class Ticket {
     public Ticket(String source, String destination, String dateOfTravel, Train train,
                   String ticketId, String userId, Map<String, String> stations,
                   int seatRow, int seatCol) {
-        this.source = source;
-        this.destination = destination;
+        setSource(source);
+        setDestination(destination);
         this.dateOfTravel = dateOfTravel;
         this.train = train;
         this.ticketId = ticketId;
         this.userId = userId;
-        this.stations = stations;
+        setStations(stations);
         this.seatRow = seatRow;
         this.seatCol = seatCol;
     }
@@ -82,11 +84,11 @@ public class Ticket {
 
     // Setters
     public void setSource(String source) {
-        this.source = source;
+        this.source = StationDictionary.canonical(source);
     }
 
     public void setDestination(String destination) {
-        this.destination = destination;
+        this.destination = StationDictionary.canonical(destination);
     }
 
     public void setDateOfTravel(String dateOfTravel) {
@@ -106,7 +108,7 @@ public class Ticket {
     }
 
     public void setStations(Map<String, String> stations) {
-        this.stations = stations;
+        this.stations = StationDictionary.canonicalKeys(stations);
     }
 
     public void setSeatRow(int seatRow) {
@@ -2,6 +2,9 @@ package ticket.booking.entities;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import ticket.booking.util.StationDictionary;
+
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -20,14 +23,22 @@ public class Train {
 
     private List<String> stations;
 
+    // Station sequence as dictionary IDs, kept in step with stations
+    @JsonIgnore
+    private int[] stationIds = new int[0];
+
+    // Built on first use from the seat matrix, then kept up to date by bookSeat/releaseSeat
+    @JsonIgnore
+    private SeatAvailability availability;
+
     public Train() {}
 
     public Train(String trainId, String trainNo, List<List<Integer>> seats, Map<String, String> stationTimes, List<String> stations) {
         this.trainId = trainId;
         this.trainNo = trainNo;
         this.seats = seats;
-        this.stationTimes = stationTimes;
-        this.stations = stations;
+        setStationTimes(stationTimes);
+        setStations(stations);
     }
 
     public String getTrainId() {
@@ -50,6 +61,61 @@ public class Train {
         return stations;
     }
 
+    @JsonIgnore
+    public SeatAvailability getAvailability() {
+        if (availability == null) {
+            availability = SeatAvailability.of(seats);
+        }
+        return availability;
+    }
+
+    /**
+     * Marks a seat as booked and updates the availability counters.
+     *
+     * @return false if the coordinates are invalid or the seat is already booked.
+     */
+    public boolean bookSeat(int row, int col) {
+        if (!isValidSeat(row, col) || seats.get(row).get(col) != 0) {
+            return false;
+        }
+        seats.get(row).set(col, 1);
+        getAvailability().seatBooked(row);
+        return true;
+    }
+
+    /**
+     * Frees a booked seat and updates the availability counters.
+     *
+     * @return false if the coordinates are invalid.
+     */
+    public boolean releaseSeat(int row, int col) {
+        if (!isValidSeat(row, col)) {
+            return false;
+        }
+        if (seats.get(row).get(col) != 0) {
+            seats.get(row).set(col, 0);
+            getAvailability().seatReleased(row);
+        }
+        return true;
+    }
+
+    private boolean isValidSeat(int row, int col) {
+        return seats != null && row >= 0 && row < seats.size() && col >= 0 && col < seats.get(row).size();
+    }
+
+    /**
+     * Returns the position of a station on this train's route, or -1 if the train does not stop there.
+     */
+    @JsonIgnore
+    public int indexOfStation(int stationId) {
+        for (int i = 0; i < stationIds.length; i++) {
+            if (stationIds[i] == stationId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public void setTrainId(String trainId) {
         this.trainId = trainId;
     }
@@ -60,14 +126,25 @@ public class Train {
 
     public void setSeats(List<List<Integer>> seats) {
         this.seats = seats;
+        this.availability = null;
+    }
+
+    /**
+     * Replaces the seat matrix together with counters already computed for it.
+     */
+    public void setSeats(List<List<Integer>> seats, SeatAvailability availability) {
+        this.seats = seats;
+        this.availability = availability;
     }
 
     public void setStationTimes(Map<String, String> stationTimes) {
-        this.stationTimes = stationTimes;
+        this.stationTimes = StationDictionary.canonicalKeys(stationTimes);
     }
 
     public void setStations(List<String> stations) {
-        this.stations = stations;
+        this.stations = stations == null ? null : new ArrayList<>(stations);
+        this.stationIds = StationDictionary.encode(this.stations);
+        this.availability = null;
     }
 
     @JsonIgnore
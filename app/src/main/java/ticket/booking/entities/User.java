@@ -70,16 +70,4 @@ public class User {
     public void setUserId(String userId) {
         this.userId = userId;
     }
-
-    // Print bookings
-    public void printTickets() {
-        if (ticketsBooked == null || ticketsBooked.isEmpty()) {
-            System.out.println("No bookings found.");
-            return;
-        }
-
-        for (int i = 0; i < ticketsBooked.size(); i++) {
-            System.out.println(ticketsBooked.get(i).getTicketInfo());
-        }
-    }
 }
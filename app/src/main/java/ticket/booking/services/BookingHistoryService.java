@@ -0,0 +1,252 @@
+package ticket.booking.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.Ticket;
+import ticket.booking.util.LocalDbFile;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.TextStyle;
+import java.util.*;
+
+/**
+ * Paginated booking history read straight from users.json.
+ *
+ * The file is streamed and only the current page of tickets is held in memory, so a user with
+ * tens of thousands of bookings never has their whole ticket list loaded, and neither does any
+ * other user's record. Pages are ordered by travel date, then ticket ID, and continue from an
+ * opaque cursor. Tickets are stored in booking order, so every page still scans the user's
+ * tickets from the start; tickets at or before the cursor are skipped without being kept.
+ */
+public class BookingHistoryService {
+
+    /**
+     * One page of history and the cursor for the next page (null on the last page).
+     */
+    public static class Page {
+
+        private final List<Ticket> tickets;
+        private final String nextCursor;
+
+        public Page(List<Ticket> tickets, String nextCursor) {
+            this.tickets = tickets;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Ticket> getTickets() {
+            return tickets;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+    }
+
+    private static final String USER_FILE_PATH = "app/src/main/java/ticket/booking/localDb/users.json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String userFilePath;
+    private final LocalDbFile userDb;
+
+    public BookingHistoryService() {
+        this(USER_FILE_PATH);
+    }
+
+    public BookingHistoryService(String userFilePath) {
+        this.userFilePath = userFilePath;
+        this.userDb = new LocalDbFile(userFilePath, objectMapper);
+    }
+
+    /**
+     * Fetch one page of a user's bookings. The credentials are checked against the user's record
+     * while it is streamed, so no user list is loaded.
+     *
+     * @param userName The user's name; other users' records are skipped without parsing.
+     * @param password The user's plain-text password.
+     * @param cursor   The cursor from the previous page, or null for the first page.
+     * @param pageSize Maximum number of tickets to return.
+     * @param from     Earliest travel date to include, or null.
+     * @param to       Latest travel date to include, or null.
+     * @param trainId  Only include tickets on this train, or null.
+     * @return the page, or empty if no user has this name and password.
+     */
+    public Optional<Page> fetchPage(String userName, String password, String cursor, int pageSize,
+                                    LocalDate from, LocalDate to, String trainId) throws IOException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive, got " + pageSize);
+        }
+        TicketKey after = cursor == null ? null : TicketKey.parse(cursor);
+        int limit = pageSize + 1;
+        DateTimeFormatter legacyFormat = legacyDateFormat();
+
+        // Max-heap of the pageSize + 1 earliest matches; the extra one tells us whether more pages follow
+        PriorityQueue<TicketKey> earliest = userDb.stream(parser -> {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected an array of users in " + userFilePath);
+            }
+            PriorityQueue<TicketKey> found = null;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String name = null;
+                String hashedPassword = null;
+                PriorityQueue<TicketKey> candidates = new PriorityQueue<>(Comparator.reverseOrder());
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if (field.equals("name")) {
+                        name = parser.getValueAsString();
+                    } else if (field.equals("hashed_password")) {
+                        hashedPassword = parser.getValueAsString();
+                    } else if (field.equals("tickets_booked") && value == JsonToken.START_ARRAY
+                            && (name == null || name.equals(userName))) {
+                        collectTickets(parser, after, limit, candidates, from, to, trainId, legacyFormat);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (userName.equals(name) && hashedPassword != null
+                        && UserServiceUtil.checkPassword(password, hashedPassword)) {
+                    found = candidates;
+                    break;
+                }
+            }
+            return found;
+        }, () -> null);
+
+        if (earliest == null) {
+            return Optional.empty();
+        }
+        List<TicketKey> page = new ArrayList<>(earliest);
+        Collections.sort(page);
+        String nextCursor = null;
+        if (page.size() > pageSize) {
+            page = page.subList(0, pageSize);
+            nextCursor = page.get(pageSize - 1).toCursor();
+        }
+        List<Ticket> tickets = new ArrayList<>(page.size());
+        page.forEach(key -> tickets.add(key.ticket));
+        return Optional.of(new Page(tickets, nextCursor));
+    }
+
+    private void collectTickets(JsonParser parser, TicketKey after, int limit, PriorityQueue<TicketKey> earliest,
+                                LocalDate from, LocalDate to, String trainId,
+                                DateTimeFormatter legacyFormat) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Ticket ticket = objectMapper.readValue(parser, Ticket.class);
+            TicketKey key = new TicketKey(travelTime(ticket, legacyFormat), ticket.getTicketId(), ticket);
+            if (after != null && key.compareTo(after) <= 0) {
+                continue;
+            }
+            if (!matches(ticket, key.travelTime, from, to, trainId)) {
+                continue;
+            }
+            if (earliest.size() < limit) {
+                earliest.add(key);
+            } else if (key.compareTo(earliest.peek()) < 0) {
+                earliest.poll();
+                earliest.add(key);
+            }
+        }
+    }
+
+    private boolean matches(Ticket ticket, long travelTime, LocalDate from, LocalDate to, String trainId) {
+        if (trainId != null && (ticket.getTrain() == null
+                || !ticket.getTrain().getTrainId().equalsIgnoreCase(trainId))) {
+            return false;
+        }
+        LocalDate travelDate = Instant.ofEpochMilli(travelTime).atZone(ZoneId.systemDefault()).toLocalDate();
+        if (from != null && travelDate.isBefore(from)) {
+            return false;
+        }
+        return to == null || !travelDate.isAfter(to);
+    }
+
+    /**
+     * Format of Date.toString(), which older bookings used for date_of_travel. Zone abbreviations
+     * such as "IST" are ambiguous, so the zone this process runs in wins; the bookings were
+     * written in the local zone.
+     */
+    private static DateTimeFormatter legacyDateFormat() {
+        return new DateTimeFormatterBuilder()
+                .appendPattern("EEE MMM dd HH:mm:ss ")
+                .appendZoneText(TextStyle.SHORT, Set.of(ZoneId.systemDefault()))
+                .appendPattern(" yyyy")
+                .toFormatter(Locale.US);
+    }
+
+    /**
+     * Parses date_of_travel: an ISO date-time with offset, an ISO date, or legacy Date.toString()
+     * output. Unreadable dates sort first.
+     */
+    private static long travelTime(Ticket ticket, DateTimeFormatter legacyFormat) {
+        String date = ticket.getDateOfTravel();
+        if (date == null) {
+            return 0;
+        }
+        try {
+            return OffsetDateTime.parse(date).toInstant().toEpochMilli();
+        } catch (DateTimeParseException notOffsetDateTime) {
+            try {
+                return LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException notDate) {
+                try {
+                    return ZonedDateTime.parse(date, legacyFormat).toInstant().toEpochMilli();
+                } catch (DateTimeParseException ignored) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sort key of a ticket: travel time, then ticket ID to break ties. Also the cursor format.
+     */
+    private static class TicketKey implements Comparable<TicketKey> {
+
+        private final long travelTime;
+        private final String ticketId;
+        private final Ticket ticket;
+
+        TicketKey(long travelTime, String ticketId, Ticket ticket) {
+            this.travelTime = travelTime;
+            this.ticketId = ticketId == null ? "" : ticketId;
+            this.ticket = ticket;
+        }
+
+        static TicketKey parse(String cursor) {
+            int separator = cursor.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid history cursor: " + cursor);
+            }
+            try {
+                return new TicketKey(Long.parseLong(cursor.substring(0, separator)),
+                        cursor.substring(separator + 1), null);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid history cursor: " + cursor);
+            }
+        }
+
+        String toCursor() {
+            return travelTime + ":" + ticketId;
+        }
+
+        @Override
+        public int compareTo(TicketKey other) {
+            int byTime = Long.compare(travelTime, other.travelTime);
+            return byTime != 0 ? byTime : ticketId.compareTo(other.ticketId);
+        }
+    }
+}
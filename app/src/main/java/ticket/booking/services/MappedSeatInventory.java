@@ -0,0 +1,326 @@
+package ticket.booking.services;
+
+import ticket.booking.entities.SeatAvailability;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Seat inventory kept in a memory-mapped file, so every booking process on the host sees the
+ * same seat state as soon as it changes.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   file header  32 bytes: magic, format version, end offset of the last record, reserved
+ *   per train    48 bytes: train ID (UTF-8, zero padded), rows, total seats, word count, reserved
+ *                then one int per row with that row's width, padded to 8 bytes
+ *                then one bit per seat, row after row, packed into 64-bit words (1 = booked)
+ * </pre>
+ * Seats are booked and freed with compare-and-set on the mapped words. Only appending a new
+ * train takes a file lock.
+ *
+ * Enabled with {@code -Dticket.booking.seatInventory=mapped}; otherwise seats stay in trains.json.
+ */
+public class MappedSeatInventory {
+
+    public static final String ENABLE_PROPERTY = "ticket.booking.seatInventory";
+
+    private static final int MAGIC = 0x54414553; // "SEAT"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 32;
+    private static final int END_OFFSET_POS = 8;
+    private static final int TRAIN_ID_BYTES = 32;
+    private static final int RECORD_HEADER_SIZE = 48;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final Map<String, MappedSeatInventory> openInventories = new HashMap<>();
+
+    /**
+     * Where one train's seats live in the file. rowStarts[r] is the bit index of row r's first
+     * seat; rowStarts[rows] is the total seat count.
+     */
+    private static class Record {
+        final int wordsPos;
+        final int[] rowStarts;
+
+        Record(int wordsPos, int[] rowStarts) {
+            this.wordsPos = wordsPos;
+            this.rowStarts = rowStarts;
+        }
+
+        int rows() {
+            return rowStarts.length - 1;
+        }
+
+        /**
+         * Bit index of a seat, or -1 if the coordinates are outside this train.
+         */
+        int seatIndex(int row, int col) {
+            if (row < 0 || row >= rows() || col < 0 || col >= rowStarts[row + 1] - rowStarts[row]) {
+                return -1;
+            }
+            return rowStarts[row] + col;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    // Lower-cased train ID -> the train's record
+    private final Map<String, Record> records = new HashMap<>();
+    private long scannedUpTo = FILE_HEADER_SIZE;
+
+    // Package-private so tests can map one file twice, as two processes would
+    MappedSeatInventory(String path) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+        try (FileLock ignored = channel.lock()) {
+            if (file.length() < FILE_HEADER_SIZE) {
+                file.setLength(FILE_HEADER_SIZE);
+                remap();
+                buffer.putInt(0, MAGIC)
+                        .putInt(4, FORMAT_VERSION);
+                LONGS.setVolatile(buffer, END_OFFSET_POS, (long) FILE_HEADER_SIZE);
+            } else {
+                remap();
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                    throw new IOException("Not a seat inventory file: " + path);
+                }
+            }
+        }
+    }
+
+    public static boolean isEnabled() {
+        return "mapped".equalsIgnoreCase(System.getProperty(ENABLE_PROPERTY));
+    }
+
+    /**
+     * Returns the inventory for a file, mapping it on first use in this process.
+     */
+    public static synchronized MappedSeatInventory open(String path) throws IOException {
+        MappedSeatInventory inventory = openInventories.get(path);
+        if (inventory == null) {
+            inventory = new MappedSeatInventory(path);
+            openInventories.put(path, inventory);
+        }
+        return inventory;
+    }
+
+    /**
+     * Adds a train to the file if no process has added it yet, seeded from its seat matrix.
+     * Rows may have different widths. Records are never resized, so a train already in the file
+     * must keep its seat layout.
+     *
+     * @throws IOException if the train is already in the file with a different seat layout.
+     */
+    public synchronized void register(Train train) throws IOException {
+        Record existing = findRecord(train.getTrainId());
+        if (existing != null) {
+            checkLayout(train, existing);
+            return;
+        }
+        try (FileLock ignored = channel.lock()) {
+            // Another process may have appended it while we waited for the lock
+            existing = findRecord(train.getTrainId());
+            if (existing != null) {
+                checkLayout(train, existing);
+                return;
+            }
+            byte[] idBytes = train.getTrainId().getBytes(StandardCharsets.UTF_8);
+            if (idBytes.length > TRAIN_ID_BYTES) {
+                throw new IOException("Train ID too long for seat inventory: " + train.getTrainId());
+            }
+            List<List<Integer>> seats = train.getSeats() == null ? new ArrayList<>() : train.getSeats();
+            int rows = seats.size();
+            int totalSeats = seats.stream().mapToInt(List::size).sum();
+            int wordCount = (totalSeats + 63) / 64;
+            int widthsSize = align8(rows * Integer.BYTES);
+            int offset = (int) endOffset();
+            int recordSize = RECORD_HEADER_SIZE + widthsSize + wordCount * Long.BYTES;
+
+            if (offset + recordSize > buffer.capacity()) {
+                file.setLength(offset + recordSize);
+                remap();
+            }
+            buffer.put(offset, Arrays.copyOf(idBytes, TRAIN_ID_BYTES))
+                    .putInt(offset + TRAIN_ID_BYTES, rows)
+                    .putInt(offset + TRAIN_ID_BYTES + 4, totalSeats)
+                    .putInt(offset + TRAIN_ID_BYTES + 8, wordCount);
+            int wordsPos = offset + RECORD_HEADER_SIZE + widthsSize;
+            int seat = 0;
+            for (int row = 0; row < rows; row++) {
+                buffer.putInt(offset + RECORD_HEADER_SIZE + row * Integer.BYTES, seats.get(row).size());
+                for (Integer booked : seats.get(row)) {
+                    if (booked != null && booked != 0) {
+                        int wordPos = wordsPos + (seat >>> 6) * Long.BYTES;
+                        LONGS.setVolatile(buffer, wordPos, (long) LONGS.getVolatile(buffer, wordPos) | (1L << seat));
+                    }
+                    seat++;
+                }
+            }
+            // Publish the record only once it is fully written
+            LONGS.setVolatile(buffer, END_OFFSET_POS, (long) (offset + recordSize));
+        }
+    }
+
+    private static void checkLayout(Train train, Record record) throws IOException {
+        List<List<Integer>> seats = train.getSeats() == null ? new ArrayList<>() : train.getSeats();
+        boolean matches = seats.size() == record.rows();
+        for (int row = 0; matches && row < seats.size(); row++) {
+            matches = seats.get(row).size() == record.rowStarts[row + 1] - record.rowStarts[row];
+        }
+        if (!matches) {
+            throw new IOException("Seat layout of train " + train.getTrainId()
+                    + " does not match the seat inventory; delete the inventory file to rebuild it");
+        }
+    }
+
+    /**
+     * Atomically marks a seat as booked.
+     *
+     * @return false if the train is unknown, the coordinates are invalid or the seat is taken.
+     */
+    public boolean book(String trainId, int row, int col) throws IOException {
+        Record record = findRecord(trainId);
+        int seat = record == null ? -1 : record.seatIndex(row, col);
+        if (seat < 0) {
+            return false;
+        }
+        int wordPos = record.wordsPos + (seat >>> 6) * Long.BYTES;
+        long bit = 1L << seat;
+        long current;
+        do {
+            current = (long) LONGS.getVolatile(buffer, wordPos);
+            if ((current & bit) != 0) {
+                return false;
+            }
+        } while (!LONGS.compareAndSet(buffer, wordPos, current, current | bit));
+        return true;
+    }
+
+    /**
+     * Atomically frees a seat.
+     *
+     * @return false if the train is unknown or the coordinates are invalid.
+     */
+    public boolean release(String trainId, int row, int col) throws IOException {
+        Record record = findRecord(trainId);
+        int seat = record == null ? -1 : record.seatIndex(row, col);
+        if (seat < 0) {
+            return false;
+        }
+        LONGS.getAndBitwiseAnd(buffer, record.wordsPos + (seat >>> 6) * Long.BYTES, ~(1L << seat));
+        return true;
+    }
+
+    /**
+     * Replaces a train's seat matrix with the current state from the file. The availability
+     * counters are computed from popcounts over the packed words rather than by walking the
+     * new matrix again.
+     */
+    public void copyInto(Train train) throws IOException {
+        Record record = findRecord(train.getTrainId());
+        if (record == null) {
+            return;
+        }
+        int rows = record.rows();
+        List<List<Integer>> seats = new ArrayList<>(rows);
+        int[] freeByRow = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            int start = record.rowStarts[row];
+            int end = record.rowStarts[row + 1];
+            List<Integer> seatRow = new ArrayList<>(end - start);
+            for (int seat = start; seat < end; seat++) {
+                seatRow.add((word(record, seat) & (1L << seat)) != 0 ? 1 : 0);
+            }
+            seats.add(seatRow);
+            freeByRow[row] = (end - start) - countBooked(record, start, end);
+        }
+        train.setSeats(seats, SeatAvailability.ofFreeCounts(freeByRow));
+    }
+
+    private long word(Record record, int seat) {
+        return (long) LONGS.getVolatile(buffer, record.wordsPos + (seat >>> 6) * Long.BYTES);
+    }
+
+    /**
+     * Number of booked seats with bit index in [from, to).
+     */
+    private int countBooked(Record record, int from, int to) {
+        int booked = 0;
+        int seat = from;
+        while (seat < to) {
+            int wordEnd = Math.min(to, ((seat >>> 6) + 1) << 6);
+            long mask = -1L << seat;
+            if ((wordEnd & 63) != 0) {
+                mask &= (1L << wordEnd) - 1;
+            }
+            booked += Long.bitCount(word(record, seat) & mask);
+            seat = wordEnd;
+        }
+        return booked;
+    }
+
+    /**
+     * Finds a train's record, picking up records appended by other processes on a miss.
+     */
+    private synchronized Record findRecord(String trainId) throws IOException {
+        String key = trainId.toLowerCase();
+        Record record = records.get(key);
+        if (record == null && endOffset() > scannedUpTo) {
+            scanNewRecords();
+            record = records.get(key);
+        }
+        return record;
+    }
+
+    private void scanNewRecords() throws IOException {
+        long end = endOffset();
+        if (end > buffer.capacity()) {
+            remap();
+        }
+        byte[] id = new byte[TRAIN_ID_BYTES];
+        int offset = (int) scannedUpTo;
+        while (offset < end) {
+            buffer.get(offset, id);
+            int length = 0;
+            while (length < id.length && id[length] != 0) {
+                length++;
+            }
+            int rows = buffer.getInt(offset + TRAIN_ID_BYTES);
+            int wordCount = buffer.getInt(offset + TRAIN_ID_BYTES + 8);
+            int[] rowStarts = new int[rows + 1];
+            for (int row = 0; row < rows; row++) {
+                rowStarts[row + 1] = rowStarts[row] + buffer.getInt(offset + RECORD_HEADER_SIZE + row * Integer.BYTES);
+            }
+            int wordsPos = offset + RECORD_HEADER_SIZE + align8(rows * Integer.BYTES);
+            records.put(new String(id, 0, length, StandardCharsets.UTF_8).toLowerCase(), new Record(wordsPos, rowStarts));
+            offset = wordsPos + wordCount * Long.BYTES;
+        }
+        scannedUpTo = end;
+    }
+
+    private static int align8(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private long endOffset() {
+        return (long) LONGS.getVolatile(buffer, END_OFFSET_POS);
+    }
+
+    private void remap() throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
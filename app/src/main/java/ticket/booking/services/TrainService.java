@@ -2,11 +2,15 @@ package ticket.booking.services;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.Ticket;
 import ticket.booking.entities.Train;
+import ticket.booking.util.LocalDbFile;
+import ticket.booking.util.StationDictionary;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -14,23 +18,46 @@ public class TrainService {
 
     private List<Train> trainList;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private static final String TRAIN_DB_PATH = "app/src/main/java/ticket/booking/localDb/trains.json";
+    static final String TRAIN_DB_PATH = "app/src/main/java/ticket/booking/localDb/trains.json";
+    private static final TypeReference<List<Train>> TRAIN_LIST_TYPE = new TypeReference<List<Train>>() {};
+    private final LocalDbFile trainDb;
+    private static final String SEAT_INVENTORY_FILE = "seats.bin";
+    // Null unless the memory-mapped seat backend is enabled
+    private final MappedSeatInventory seatInventory;
 
     public TrainService() throws IOException {
-        File trainFile = new File(TRAIN_DB_PATH);
-        if (!trainFile.exists()) {
-            trainList = new ArrayList<>();
-        } else {
-            trainList = objectMapper.readValue(trainFile, new TypeReference<List<Train>>() {});
+        this(TRAIN_DB_PATH);
+    }
+
+    /**
+     * Works against the given trains file instead of the one in localDb. The mapped seat
+     * inventory, if enabled, lives next to it.
+     */
+    public TrainService(String trainFilePath) throws IOException {
+        trainDb = new LocalDbFile(trainFilePath, objectMapper);
+        trainList = trainDb.read(TRAIN_LIST_TYPE, ArrayList::new);
+        seatInventory = MappedSeatInventory.isEnabled()
+                ? MappedSeatInventory.open(new File(trainDb.getFile().getParentFile(), SEAT_INVENTORY_FILE).getPath())
+                : null;
+        if (seatInventory != null) {
+            for (Train train : trainList) {
+                seatInventory.register(train);
+                seatInventory.copyInto(train);
+            }
         }
     }
 
     /**
-     * Search for all valid trains from a given source to a destination.
+     * Search for all valid trains from a given source to a destination that still have a free seat.
      */
     public List<Train> searchTrains(String source, String destination) {
+        int sourceId = StationDictionary.lookup(source);
+        int destinationId = StationDictionary.lookup(destination);
+        if (sourceId == StationDictionary.UNKNOWN || destinationId == StationDictionary.UNKNOWN) {
+            return new ArrayList<>();
+        }
         return trainList.stream()
-                .filter(train -> validTrain(train, source, destination))
+                .filter(train -> validTrain(train, sourceId, destinationId))
                 .collect(Collectors.toList());
     }
 
@@ -38,57 +65,327 @@ public class TrainService {
      * Add a new train to the list, or update if it already exists.
      */
     public void addTrain(Train newTrain) {
-        Optional<Train> existingTrain = trainList.stream()
-                .filter(train -> train.getTrainId().equalsIgnoreCase(newTrain.getTrainId()))
-                .findFirst();
-
-        if (existingTrain.isPresent()) {
-            updateTrain(newTrain);
-        } else {
-            trainList.add(newTrain);
-            saveTrainListToFile();
-        }
+        saveTrain(newTrain);
     }
 
     /**
      * Update an existing train in the list.
      */
     public void updateTrain(Train updatedTrain) {
-        OptionalInt index = IntStream.range(0, trainList.size())
-                .filter(i -> trainList.get(i).getTrainId().equalsIgnoreCase(updatedTrain.getTrainId()))
-                .findFirst();
+        // Fallback: Add as new if not found
+        saveTrain(updatedTrain);
+    }
+
+    /**
+     * Book a seat against the stored copy of the train, so a seat sold by another process
+     * since this one loaded trains.json is not sold again. The seat on the caller's train is
+     * updated in place to match the stored copy either way.
+     */
+    public boolean bookSeat(Train train, int row, int col) throws IOException {
+        if (seatInventory != null) {
+            boolean booked = seatInventory.book(train.getTrainId(), row, col);
+            if (booked) {
+                mirrorSeat(train, row, col, true);
+            } else {
+                // Lost to another process, or invalid: show the caller the current state
+                refreshSeats(train);
+            }
+            return booked;
+        }
+        boolean booked = updateStoredTrain(train.getTrainId(), stored -> stored.bookSeat(row, col));
+        syncSeat(train, row, col);
+        return booked;
+    }
+
+    /**
+     * Free a seat on the stored copy of the train and on the caller's train.
+     */
+    public boolean releaseSeat(Train train, int row, int col) throws IOException {
+        if (seatInventory != null) {
+            boolean released = seatInventory.release(train.getTrainId(), row, col);
+            if (released) {
+                mirrorSeat(train, row, col, false);
+            }
+            return released;
+        }
+        boolean released = updateStoredTrain(train.getTrainId(), stored -> stored.releaseSeat(row, col));
+        syncSeat(train, row, col);
+        return released;
+    }
+
+    /**
+     * Free the seats held by a set of tickets on one train, e.g. when the train is cancelled,
+     * with a single write.
+     *
+     * @return the number of seats freed.
+     */
+    public int releaseSeats(String trainId, List<Ticket> tickets) throws IOException {
+        return updateStoredTrains(() -> {
+            Optional<Train> stored = findTrain(trainId);
+            if (stored.isEmpty()) {
+                return 0;
+            }
+            int released = 0;
+            for (Ticket ticket : tickets) {
+                if (freeSeat(stored.get(), ticket.getSeatRow(), ticket.getSeatCol())) {
+                    released++;
+                }
+            }
+            return released;
+        }, released -> released > 0);
+    }
+
+    /**
+     * Move the seats held by a set of tickets from one train to another with a single write.
+     * Each ticket keeps its row and column if that seat is free on the new train, and otherwise
+     * gets the first free seat. Tickets that do not fit keep their old seat.
+     *
+     * @return ticket ID to new {row, col} for every ticket that was moved.
+     */
+    public Map<String, int[]> moveSeats(String fromTrainId, String toTrainId, List<Ticket> tickets) throws IOException {
+        return updateStoredTrains(() -> {
+            Map<String, int[]> moved = new LinkedHashMap<>();
+            Optional<Train> from = findTrain(fromTrainId);
+            Optional<Train> to = findTrain(toTrainId);
+            if (from.isEmpty() || to.isEmpty()) {
+                return moved;
+            }
+            for (Ticket ticket : tickets) {
+                int[] seat = claimSeat(to.get(), ticket.getSeatRow(), ticket.getSeatCol());
+                if (seat != null) {
+                    freeSeat(from.get(), ticket.getSeatRow(), ticket.getSeatCol());
+                    moved.put(ticket.getTicketId(), seat);
+                }
+            }
+            return moved;
+        }, moved -> !moved.isEmpty());
+    }
+
+    /**
+     * Undo part of a {@link #moveSeats}: free each ticket's new seat and book its old seat again.
+     *
+     * @param tickets The tickets to move back, still holding their old row and column.
+     * @param moved   The new seats returned by {@link #moveSeats}.
+     * @return the number of tickets whose old seat could be booked again.
+     */
+    public int restoreSeats(String fromTrainId, String toTrainId, List<Ticket> tickets,
+                            Map<String, int[]> moved) throws IOException {
+        return updateStoredTrains(() -> {
+            Optional<Train> from = findTrain(fromTrainId);
+            Optional<Train> to = findTrain(toTrainId);
+            if (from.isEmpty() || to.isEmpty()) {
+                return 0;
+            }
+            int restored = 0;
+            for (Ticket ticket : tickets) {
+                int[] seat = moved.get(ticket.getTicketId());
+                if (seat == null) {
+                    continue;
+                }
+                freeSeat(to.get(), seat[0], seat[1]);
+                if (bookOn(from.get(), ticket.getSeatRow(), ticket.getSeatCol())) {
+                    restored++;
+                }
+            }
+            return restored;
+        }, restored -> !moved.isEmpty());
+    }
+
+    /**
+     * Look up a loaded train by ID.
+     */
+    public Optional<Train> getTrain(String trainId) {
+        return findTrain(trainId);
+    }
+
+    /**
+     * Book the given seat, or the first free one if it is taken.
+     *
+     * @return the {row, col} booked, or null if the train is full.
+     */
+    private int[] claimSeat(Train train, int row, int col) throws IOException {
+        if (bookOn(train, row, col)) {
+            return new int[]{row, col};
+        }
+        List<List<Integer>> seats = train.getSeats();
+        for (int r = 0; r < seats.size(); r++) {
+            for (int c = 0; c < seats.get(r).size(); c++) {
+                if (seats.get(r).get(c) == 0 && bookOn(train, r, c)) {
+                    return new int[]{r, c};
+                }
+            }
+        }
+        return null;
+    }
 
-        if (index.isPresent()) {
-            trainList.set(index.getAsInt(), updatedTrain);
-            saveTrainListToFile();
+    private boolean bookOn(Train train, int row, int col) throws IOException {
+        if (seatInventory == null) {
+            return train.bookSeat(row, col);
+        }
+        boolean booked = seatInventory.book(train.getTrainId(), row, col);
+        if (booked) {
+            train.bookSeat(row, col);
+        }
+        return booked;
+    }
+
+    private boolean freeSeat(Train train, int row, int col) throws IOException {
+        if (seatInventory == null) {
+            return train.releaseSeat(row, col);
+        }
+        boolean released = seatInventory.release(train.getTrainId(), row, col);
+        if (released) {
+            train.releaseSeat(row, col);
+        }
+        return released;
+    }
+
+    /**
+     * Apply a seat change already made in the mapped inventory to the caller's train and the
+     * stored copy in place, so their availability counters are updated in O(1) instead of
+     * being rebuilt.
+     */
+    private void mirrorSeat(Train train, int row, int col, boolean booked) {
+        applySeat(train, row, col, booked);
+        Optional<Train> stored = findTrain(train.getTrainId());
+        if (stored.isPresent() && stored.get() != train) {
+            applySeat(stored.get(), row, col, booked);
+        }
+    }
+
+    /**
+     * Copy one seat's state from the stored copy to the caller's train in place, so the
+     * caller's availability counters are adjusted in O(1) and its rows are not shared.
+     */
+    private void syncSeat(Train train, int row, int col) {
+        Optional<Train> stored = findTrain(train.getTrainId());
+        if (stored.isEmpty() || stored.get() == train) {
+            return;
+        }
+        List<List<Integer>> storedSeats = stored.get().getSeats();
+        if (row < 0 || row >= storedSeats.size() || col < 0 || col >= storedSeats.get(row).size()) {
+            return;
+        }
+        applySeat(train, row, col, storedSeats.get(row).get(col) != 0);
+    }
+
+    private static void applySeat(Train train, int row, int col, boolean booked) {
+        if (booked) {
+            train.bookSeat(row, col);
         } else {
-            // Fallback: Add as new if not found
-            addTrain(updatedTrain);
+            train.releaseSeat(row, col);
         }
     }
 
     /**
-     * Save the current train list to the JSON file.
+     * Reread trains.json after being told it is stale. With the mapped seat backend the
+     * reread seat matrices are out of date, so they are replaced from the inventory.
      */
-    private void saveTrainListToFile() {
+    private void reloadTrains() throws IOException {
+        trainList = trainDb.reload(TRAIN_LIST_TYPE, ArrayList::new);
+        if (seatInventory != null) {
+            for (Train train : trainList) {
+                seatInventory.copyInto(train);
+            }
+        }
+    }
+
+    /**
+     * Copy the mapped seat state into the caller's train and the stored copy; trains.json is not rewritten.
+     */
+    private void refreshSeats(Train train) throws IOException {
+        seatInventory.copyInto(train);
+        Optional<Train> stored = findTrain(train.getTrainId());
+        if (stored.isPresent()) {
+            seatInventory.copyInto(stored.get());
+        }
+    }
+
+    private Optional<Train> findTrain(String trainId) {
+        return trainList.stream()
+                .filter(train -> train.getTrainId().equalsIgnoreCase(trainId))
+                .findFirst();
+    }
+
+    /**
+     * Replace the train with the same ID, or append it, and save. If another process has
+     * written trains.json since it was loaded, the file is reloaded first and only this train
+     * is written over it.
+     */
+    private void saveTrain(Train changedTrain) {
         try {
-            objectMapper.writeValue(new File(TRAIN_DB_PATH), trainList);
+            if (seatInventory != null) {
+                seatInventory.register(changedTrain);
+            }
+            trainDb.update(stale -> {
+                if (stale) {
+                    reloadTrains();
+                }
+                OptionalInt index = IntStream.range(0, trainList.size())
+                        .filter(i -> trainList.get(i).getTrainId().equalsIgnoreCase(changedTrain.getTrainId()))
+                        .findFirst();
+                if (index.isPresent()) {
+                    trainList.set(index.getAsInt(), changedTrain);
+                } else {
+                    trainList.add(changedTrain);
+                }
+                trainDb.write(trainList);
+                return null;
+            });
         } catch (IOException e) {
             System.out.println("Error saving train list: " + e.getMessage());
         }
     }
 
     /**
-     * Checks whether a train is valid for the given source and destination in the correct order.
+     * Apply a change to the stored copy of one train and save it if the change succeeded,
+     * reloading trains.json first if it is stale.
      */
-    private boolean validTrain(Train train, String source, String destination) {
-        List<String> stationOrder = train.getStations().stream()
-                .map(String::toLowerCase)
-                .collect(Collectors.toList());
+    private boolean updateStoredTrain(String trainId, Predicate<Train> change) throws IOException {
+        return trainDb.update(stale -> {
+            if (stale) {
+                reloadTrains();
+            }
+            Optional<Train> stored = findTrain(trainId);
+            if (stored.isEmpty() || !change.test(stored.get())) {
+                return false;
+            }
+            trainDb.write(trainList);
+            return true;
+        });
+    }
+
+    private interface TrainBatch<R> {
+        R apply() throws IOException;
+    }
+
+    /**
+     * Run a multi-seat change against the stored trains under one lock, reloading trains.json
+     * first if it is stale, and write it once if anything changed. With the mapped seat
+     * backend the seats are changed in the inventory and trains.json is left alone.
+     */
+    private <R> R updateStoredTrains(TrainBatch<R> batch, Predicate<R> changed) throws IOException {
+        return trainDb.update(stale -> {
+            if (stale) {
+                reloadTrains();
+            }
+            R batchResult = batch.apply();
+            if (seatInventory == null && changed.test(batchResult)) {
+                trainDb.write(trainList);
+            }
+            return batchResult;
+        });
+    }
 
-        int sourceIndex = stationOrder.indexOf(source.toLowerCase());
-        int destinationIndex = stationOrder.indexOf(destination.toLowerCase());
+    /**
+     * Checks whether a train is valid for the given source and destination in the correct order
+     * and still has a free seat.
+     */
+    private boolean validTrain(Train train, int sourceId, int destinationId) {
+        int sourceIndex = train.indexOfStation(sourceId);
+        int destinationIndex = train.indexOfStation(destinationId);
 
-        return sourceIndex != -1 && destinationIndex != -1 && sourceIndex < destinationIndex;
+        return sourceIndex != -1 && destinationIndex != -1 && sourceIndex < destinationIndex
+                && !train.getAvailability().isSoldOut();
     }
 }
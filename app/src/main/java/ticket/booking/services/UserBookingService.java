@@ -5,40 +5,118 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import ticket.booking.entities.Ticket;
 import ticket.booking.entities.Train;
 import ticket.booking.entities.User;
+import ticket.booking.util.LocalDbFile;
 import ticket.booking.util.UserServiceUtil;
 
-import java.io.File;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Predicate;
 
 public class UserBookingService {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private List<User> userList;
     private User user;
-    private final String USER_FILE_PATH = "app/src/main/java/ticket/booking/localDb/users.json";
+    private static final String USER_FILE_PATH = "app/src/main/java/ticket/booking/localDb/users.json";
+    private static final TypeReference<List<User>> USER_LIST_TYPE = new TypeReference<List<User>>() {};
+    private final String userFilePath;
+    private final String trainFilePath;
+    private final LocalDbFile userDb;
+    // Lower-cased train ID -> (ticket ID -> ticket), kept in step with the tickets in userList.
+    // Built on first use, since only the per-train bulk operations need it.
+    private Map<String, Map<String, Ticket>> ticketsByTrain;
 
     public UserBookingService(User user) throws IOException {
-        this.user = user;
-        loadUserListFromFile();
+        this(user, USER_FILE_PATH, TrainService.TRAIN_DB_PATH);
     }
 
     public UserBookingService() throws IOException {
+        this(null);
+    }
+
+    /**
+     * Works against the given users and trains files instead of the ones in localDb.
+     */
+    public UserBookingService(User user, String userFilePath, String trainFilePath) throws IOException {
+        this.user = user;
+        this.userFilePath = userFilePath;
+        this.trainFilePath = trainFilePath;
+        this.userDb = new LocalDbFile(userFilePath, objectMapper);
         loadUserListFromFile();
     }
 
     private void loadUserListFromFile() throws IOException {
-        File file = new File(USER_FILE_PATH);
-        if (!file.exists()) {
-            userList = new ArrayList<>();
-        } else {
-            userList = objectMapper.readValue(file, new TypeReference<List<User>>() {});
+        userList = userDb.read(USER_LIST_TYPE, ArrayList::new);
+        ticketsByTrain = null;
+    }
+
+    private void indexTickets() {
+        ticketsByTrain = new HashMap<>();
+        for (User u : userList) {
+            if (u.getTicketsBooked() != null) {
+                u.getTicketsBooked().forEach(this::indexTicket);
+            }
+        }
+    }
+
+    private void indexTicket(Ticket ticket) {
+        if (ticketsByTrain != null && ticket.getTrain() != null) {
+            ticketsByTrain.computeIfAbsent(ticket.getTrain().getTrainId().toLowerCase(), k -> new LinkedHashMap<>())
+                    .put(ticket.getTicketId(), ticket);
+        }
+    }
+
+    private void unindexTicket(Ticket ticket) {
+        if (ticketsByTrain == null || ticket.getTrain() == null) {
+            return;
         }
+        String trainKey = ticket.getTrain().getTrainId().toLowerCase();
+        Map<String, Ticket> onTrain = ticketsByTrain.get(trainKey);
+        if (onTrain != null) {
+            onTrain.remove(ticket.getTicketId());
+            if (onTrain.isEmpty()) {
+                ticketsByTrain.remove(trainKey);
+            }
+        }
+    }
+
+    /**
+     * All tickets currently booked on a train, across every user.
+     */
+    public List<Ticket> getTicketsForTrain(String trainId) {
+        if (ticketsByTrain == null) {
+            indexTickets();
+        }
+        Map<String, Ticket> onTrain = ticketsByTrain.get(trainId.toLowerCase());
+        return onTrain == null ? new ArrayList<>() : new ArrayList<>(onTrain.values());
+    }
+
+    /**
+     * Apply a change to the user list and save it if the change succeeded. If another process
+     * has written users.json since it was loaded, the file is reloaded first and the change is
+     * re-applied to the fresh list, so only the users touched here are overwritten.
+     */
+    private boolean updateUserList(Predicate<List<User>> change) throws IOException {
+        return userDb.update(stale -> {
+            if (stale) {
+                userList = userDb.reload(USER_LIST_TYPE, ArrayList::new);
+                ticketsByTrain = null;
+            }
+            if (!change.test(userList)) {
+                return false;
+            }
+            userDb.write(userList);
+            return true;
+        });
     }
 
-    private void saveUserListToFile() throws IOException {
-        File usersFile = new File(USER_FILE_PATH);
-        objectMapper.writeValue(usersFile, userList);
+    private static Optional<User> findById(List<User> users, String userId) {
+        return users.stream()
+                .filter(u -> u.getUserId().equals(userId))
+                .findFirst();
     }
 
     private Optional<User> getValidatedUser() {
@@ -54,8 +132,7 @@ public class UserBookingService {
 
     public Boolean signUp(User newUser) {
         try {
-            userList.add(newUser);
-            saveUserListToFile();
+            updateUserList(users -> users.add(newUser));
             return Boolean.TRUE;
         } catch (IOException ex) {
             System.out.println("Error saving user: " + ex.getMessage());
@@ -63,12 +140,33 @@ public class UserBookingService {
         }
     }
 
-    public void fetchBookings() {
-        Optional<User> userFetched = getValidatedUser();
-        if (userFetched.isPresent()) {
-            userFetched.get().printTickets();
-        } else {
-            System.out.println("Invalid credentials or user not found.");
+    /**
+     * Fetch one page of the logged-in user's bookings, ordered by travel date. The history and
+     * the credentials are both streamed from users.json, so neither the loaded user list nor more
+     * than the requested page of tickets is used.
+     *
+     * @param cursor  The cursor from the previous page, or null for the first page.
+     * @param from    Earliest travel date to include, or null.
+     * @param to      Latest travel date to include, or null.
+     * @param trainId Only include tickets on this train, or null.
+     */
+    public BookingHistoryService.Page fetchBookingsPage(String cursor, int pageSize, LocalDate from, LocalDate to,
+                                                        String trainId) {
+        BookingHistoryService.Page empty = new BookingHistoryService.Page(new ArrayList<>(), null);
+        if (user == null) {
+            System.out.println("User not logged in.");
+            return empty;
+        }
+        try {
+            Optional<BookingHistoryService.Page> page = new BookingHistoryService(userFilePath).fetchPage(
+                    user.getName(), user.getPassword(), cursor, pageSize, from, to, trainId);
+            if (page.isEmpty()) {
+                System.out.println("Invalid credentials or user not found.");
+            }
+            return page.orElse(empty);
+        } catch (IOException ex) {
+            System.out.println("Error fetching bookings: " + ex.getMessage());
+            return empty;
         }
     }
 
@@ -98,52 +196,44 @@ public class UserBookingService {
         }
 
         Ticket ticketToCancel = ticketOpt.get();
+        String userId = actualUser.getUserId();
 
-        // Free the seat in the train
-        Train train = ticketToCancel.getTrain();
-        List<List<Integer>> seats = train.getSeats();
-        int row = ticketToCancel.getSeatRow();
-        int col = ticketToCancel.getSeatCol();
-
-        if (row >= 0 && row < seats.size() && col >= 0 && col < seats.get(row).size()) {
-            seats.get(row).set(col, 0); // unbook the seat
-            train.setSeats(seats);
-
-            // ✅ Try to update train
-            try {
-                TrainService trainService = new TrainService();
-                trainService.addTrain(train);
-            } catch (IOException e) {
-                System.out.println("Error updating train seat info: " + e.getMessage());
-                return Boolean.FALSE;
-            }
-        } else {
-            System.out.println("Invalid seat coordinates in ticket.");
+        // Remove ticket from user first, so a ticket cancelled concurrently elsewhere frees its seat only once
+        boolean removed;
+        try {
+            removed = updateUserList(users -> findById(users, userId)
+                    .map(u -> removeTicket(u, ticketToCancel))
+                    .orElse(false));
+        } catch (IOException e) {
+            System.out.println("Failed to update user data after cancellation.");
             return Boolean.FALSE;
         }
 
-        // Remove ticket from user
-        boolean removed = actualUser.getTicketsBooked()
-                .removeIf(ticket -> ticket.getTicketId().equals(ticketId));
+        if (!removed) {
+            System.out.println("Ticket removal failed.");
+            return Boolean.FALSE;
+        }
 
-        if (removed) {
-            try {
-                saveUserListToFile();
-                System.out.println("Ticket with ID " + ticketId + " has been canceled.");
-                return Boolean.TRUE;
-            } catch (IOException e) {
-                System.out.println("Failed to update user data after cancellation.");
+        // Free the seat in the train
+        try {
+            TrainService trainService = new TrainService(trainFilePath);
+            if (!trainService.releaseSeat(ticketToCancel.getTrain(),
+                    ticketToCancel.getSeatRow(), ticketToCancel.getSeatCol())) {
+                System.out.println("Invalid seat coordinates in ticket.");
                 return Boolean.FALSE;
             }
-        } else {
-            System.out.println("Ticket removal failed.");
+        } catch (IOException e) {
+            System.out.println("Error updating train seat info: " + e.getMessage());
             return Boolean.FALSE;
         }
+
+        System.out.println("Ticket with ID " + ticketId + " has been canceled.");
+        return Boolean.TRUE;
     }
 
     public List<Train> getTrains(String source, String destination) {
         try {
-            TrainService trainService = new TrainService();
+            TrainService trainService = new TrainService(trainFilePath);
             return trainService.searchTrains(source, destination);
         } catch (IOException ex) {
             System.out.println("Error fetching trains: " + ex.getMessage());
@@ -156,54 +246,257 @@ public class UserBookingService {
     }
 
     public Boolean bookTrainSeat(Train train, int row, int seat) {
+        Optional<User> validatedUser = getValidatedUser();
+        if (validatedUser.isEmpty()) {
+            System.out.println("User not logged in or invalid credentials.");
+            return Boolean.FALSE;
+        }
+        User actualUser = validatedUser.get();
+
+        TrainService trainService;
         try {
-            TrainService trainService = new TrainService();
+            trainService = new TrainService(trainFilePath);
             List<List<Integer>> seats = train.getSeats();
 
-            if (row >= 0 && row < seats.size() && seat >= 0 && seat < seats.get(row).size()) {
-                if (seats.get(row).get(seat) == 0) {
-                    seats.get(row).set(seat, 1);
-                    train.setSeats(seats);
-                    trainService.addTrain(train);
-
-                    Optional<User> validatedUser = getValidatedUser();
-                    if (validatedUser.isPresent()) {
-                        User actualUser = validatedUser.get();
-
-                        Ticket ticket = new Ticket();
-                        ticket.setTicketId(UUID.randomUUID().toString());
-                        ticket.setUserId(actualUser.getUserId());
-                        ticket.setTrain(train);
-                        ticket.setStations(train.getStationTimes());
-                        ticket.setSource(train.getStations().get(0));
-                        ticket.setDestination(train.getStations().get(train.getStations().size() - 1));
-                        ticket.setDateOfTravel(new Date().toString());
-                        ticket.setSeatRow(row);
-                        ticket.setSeatCol(seat);
-
-                        List<Ticket> tickets = actualUser.getTicketsBooked();
-                        if (tickets == null) tickets = new ArrayList<>();
-                        tickets.add(ticket);
-                        actualUser.setTicketsBooked(tickets);
-
-                        saveUserListToFile();
-                        System.out.println("Seat booked successfully.");
-                        return Boolean.TRUE;
-                    } else {
-                        System.out.println("User not logged in or invalid credentials.");
-                        return Boolean.FALSE;
-                    }
-                } else {
-                    System.out.println("Seat already booked.");
-                    return Boolean.FALSE;
-                }
-            } else {
+            if (row < 0 || row >= seats.size() || seat < 0 || seat >= seats.get(row).size()) {
                 System.out.println("Invalid seat coordinates.");
                 return Boolean.FALSE;
             }
+            if (!trainService.bookSeat(train, row, seat)) {
+                System.out.println("Seat already booked.");
+                return Boolean.FALSE;
+            }
         } catch (IOException ex) {
             System.out.println("Error booking seat: " + ex.getMessage());
             return Boolean.FALSE;
         }
+
+        Ticket ticket = new Ticket();
+        ticket.setTicketId(UUID.randomUUID().toString());
+        ticket.setUserId(actualUser.getUserId());
+        ticket.setDateOfTravel(OffsetDateTime.now().truncatedTo(ChronoUnit.SECONDS).toString());
+        assignTrain(ticket, train, row, seat);
+
+        // The seat is already sold, so give it back if the ticket cannot be saved
+        boolean saved;
+        try {
+            saved = updateUserList(users -> findById(users, actualUser.getUserId())
+                    .map(u -> {
+                        if (u.getTicketsBooked() == null) u.setTicketsBooked(new ArrayList<>());
+                        indexTicket(ticket);
+                        return u.getTicketsBooked().add(ticket);
+                    })
+                    .orElse(false));
+        } catch (IOException ex) {
+            System.out.println("Error saving ticket: " + ex.getMessage());
+            findById(userList, actualUser.getUserId()).ifPresent(u -> removeTicket(u, ticket));
+            saved = false;
+        }
+
+        if (!saved) {
+            try {
+                trainService.releaseSeat(train, row, seat);
+            } catch (IOException ex) {
+                System.out.println("Error releasing seat: " + ex.getMessage());
+            }
+            System.out.println("Booking failed; the seat has been released.");
+            return Boolean.FALSE;
+        }
+
+        System.out.println("Seat booked successfully.");
+        return Boolean.TRUE;
+    }
+
+    /**
+     * Cancel every ticket booked on a train, e.g. when the train is withdrawn. Only the affected
+     * users are touched; they are saved in one write and their seats are freed in one write.
+     * If the seats cannot be freed, the tickets are put back so that no ticket is lost while
+     * its seat stays sold.
+     *
+     * @return the number of tickets cancelled, or 0 if nothing was cancelled.
+     */
+    public int cancelTrainBookings(String trainId) {
+        TrainService trainService;
+        try {
+            trainService = new TrainService(trainFilePath);
+        } catch (IOException e) {
+            System.out.println("Error cancelling bookings for train " + trainId + ": " + e.getMessage());
+            return 0;
+        }
+
+        Map<String, Ticket> cancelled = new LinkedHashMap<>();
+        try {
+            updateUserList(users -> {
+                Map<String, User> owners = new HashMap<>();
+                for (User u : users) {
+                    owners.putIfAbsent(u.getUserId(), u);
+                }
+                for (Ticket ticket : getTicketsForTrain(trainId)) {
+                    User owner = owners.get(ticket.getUserId());
+                    if (owner != null && removeTicket(owner, ticket)) {
+                        cancelled.put(ticket.getTicketId(), ticket);
+                    }
+                }
+                return !cancelled.isEmpty();
+            });
+        } catch (IOException e) {
+            System.out.println("Error cancelling bookings for train " + trainId + ": " + e.getMessage());
+            return 0;
+        }
+        if (cancelled.isEmpty()) {
+            System.out.println("No tickets booked on train " + trainId + ".");
+            return 0;
+        }
+
+        try {
+            trainService.releaseSeats(trainId, new ArrayList<>(cancelled.values()));
+        } catch (IOException e) {
+            System.out.println("Error freeing seats on train " + trainId + ": " + e.getMessage());
+            restoreTickets(cancelled.values());
+            return 0;
+        }
+        System.out.println("Cancelled " + cancelled.size() + " tickets on train " + trainId + ".");
+        return cancelled.size();
+    }
+
+    /**
+     * Give cancelled tickets back to their owners after their seats could not be freed.
+     */
+    private void restoreTickets(Collection<Ticket> tickets) {
+        try {
+            updateUserList(users -> {
+                boolean restored = false;
+                for (Ticket ticket : tickets) {
+                    Optional<User> owner = findById(users, ticket.getUserId());
+                    if (owner.isPresent()) {
+                        if (owner.get().getTicketsBooked() == null) {
+                            owner.get().setTicketsBooked(new ArrayList<>());
+                        }
+                        owner.get().getTicketsBooked().add(ticket);
+                        indexTicket(ticket);
+                        restored = true;
+                    }
+                }
+                return restored;
+            });
+            System.out.println("The tickets have been restored; no bookings were cancelled.");
+        } catch (IOException e) {
+            System.out.println("Error restoring tickets: " + e.getMessage() + ". " + tickets.size()
+                    + " tickets were cancelled but their seats are still sold.");
+        }
+    }
+
+    /**
+     * Move every ticket booked on one train to another, e.g. when a service is replaced. Each
+     * ticket keeps its seat if it is free on the new train and otherwise gets the first free one;
+     * tickets that do not fit stay on the old train.
+     *
+     * users.json stays exclusively locked from reading the affected tickets until they are saved,
+     * so tickets booked by other processes are moved too and none can be cancelled midway. The
+     * new seats have to be claimed before the tickets can point at them, so if the users cannot
+     * be saved the seats are moved back.
+     *
+     * @return the number of tickets moved.
+     */
+    public int rescheduleTrainBookings(String fromTrainId, String toTrainId) {
+        TrainService trainService;
+        try {
+            trainService = new TrainService(trainFilePath);
+        } catch (IOException e) {
+            System.out.println("Error moving bookings to train " + toTrainId + ": " + e.getMessage());
+            return 0;
+        }
+        Optional<Train> target = trainService.getTrain(toTrainId);
+        if (target.isEmpty()) {
+            System.out.println("Train " + toTrainId + " not found.");
+            return 0;
+        }
+
+        // {tickets moved, tickets on the old train}
+        int[] counts;
+        try {
+            counts = userDb.update(stale -> {
+                if (stale) {
+                    userList = userDb.reload(USER_LIST_TYPE, ArrayList::new);
+                    ticketsByTrain = null;
+                }
+                List<Ticket> affected = getTicketsForTrain(fromTrainId);
+                if (affected.isEmpty()) {
+                    return new int[]{0, 0};
+                }
+                Map<String, int[]> newSeats = trainService.moveSeats(fromTrainId, toTrainId, affected);
+                if (newSeats.isEmpty()) {
+                    return new int[]{0, affected.size()};
+                }
+
+                List<Runnable> undo = new ArrayList<>();
+                for (Ticket ticket : affected) {
+                    int[] seat = newSeats.get(ticket.getTicketId());
+                    if (seat != null) {
+                        Train oldTrain = ticket.getTrain();
+                        int oldRow = ticket.getSeatRow();
+                        int oldCol = ticket.getSeatCol();
+                        unindexTicket(ticket);
+                        assignTrain(ticket, target.get(), seat[0], seat[1]);
+                        indexTicket(ticket);
+                        undo.add(() -> {
+                            unindexTicket(ticket);
+                            assignTrain(ticket, oldTrain, oldRow, oldCol);
+                            indexTicket(ticket);
+                        });
+                    }
+                }
+                try {
+                    userDb.write(userList);
+                } catch (IOException e) {
+                    undo.forEach(Runnable::run);
+                    restoreSeats(trainService, fromTrainId, toTrainId, affected, newSeats);
+                    throw e;
+                }
+                return new int[]{newSeats.size(), affected.size()};
+            });
+        } catch (IOException e) {
+            System.out.println("Error moving bookings to train " + toTrainId + ": " + e.getMessage());
+            return 0;
+        }
+
+        if (counts[1] == 0) {
+            System.out.println("No tickets booked on train " + fromTrainId + ".");
+            return 0;
+        }
+        System.out.println("Moved " + counts[0] + " of " + counts[1] + " tickets from train "
+                + fromTrainId + " to train " + toTrainId + ".");
+        return counts[0];
+    }
+
+    private void restoreSeats(TrainService trainService, String fromTrainId, String toTrainId,
+                              List<Ticket> tickets, Map<String, int[]> newSeats) {
+        try {
+            int restored = trainService.restoreSeats(fromTrainId, toTrainId, tickets, newSeats);
+            if (restored < newSeats.size()) {
+                System.out.println((newSeats.size() - restored) + " old seats on train " + fromTrainId
+                        + " were taken before they could be restored.");
+            }
+        } catch (IOException e) {
+            System.out.println("Error restoring seats on train " + fromTrainId + ": " + e.getMessage());
+        }
+    }
+
+    private boolean removeTicket(User owner, Ticket ticket) {
+        boolean removed = owner.getTicketsBooked() != null
+                && owner.getTicketsBooked().removeIf(t -> t.getTicketId().equals(ticket.getTicketId()));
+        if (removed) {
+            unindexTicket(ticket);
+        }
+        return removed;
+    }
+
+    private static void assignTrain(Ticket ticket, Train train, int row, int col) {
+        ticket.setTrain(train);
+        ticket.setStations(train.getStationTimes());
+        ticket.setSource(train.getStations().get(0));
+        ticket.setDestination(train.getStations().get(train.getStations().size() - 1));
+        ticket.setSeatRow(row);
+        ticket.setSeatCol(col);
     }
 }
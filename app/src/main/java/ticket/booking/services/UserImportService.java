@@ -0,0 +1,332 @@
+package ticket.booking.services;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import ticket.booking.entities.User;
+import ticket.booking.util.LocalDbFile;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Bulk import of users from a CSV or JSON file into users.json.
+ *
+ * Passwords are hashed on a fixed worker pool sized to the available cores, and the
+ * merged user list is written in a single streamed pass instead of one rewrite per user.
+ */
+public class UserImportService {
+
+    public static final int DEFAULT_BCRYPT_COST = 10;
+    private static final int MIN_BCRYPT_COST = 4;
+    private static final int MAX_BCRYPT_COST = 30;
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String USER_FILE_PATH = "app/src/main/java/ticket/booking/localDb/users.json";
+    private final LocalDbFile userDb;
+    private final int bcryptCost;
+    private final int workerCount;
+
+    public UserImportService() {
+        this(DEFAULT_BCRYPT_COST);
+    }
+
+    public UserImportService(int bcryptCost) {
+        this(USER_FILE_PATH, bcryptCost);
+    }
+
+    /**
+     * Imports into the given users file instead of the one in localDb.
+     */
+    public UserImportService(String userFilePath, int bcryptCost) {
+        if (bcryptCost < MIN_BCRYPT_COST || bcryptCost > MAX_BCRYPT_COST) {
+            throw new IllegalArgumentException("BCrypt cost must be between " + MIN_BCRYPT_COST
+                    + " and " + MAX_BCRYPT_COST + ", got " + bcryptCost);
+        }
+        this.userDb = new LocalDbFile(userFilePath, objectMapper);
+        this.bcryptCost = bcryptCost;
+        this.workerCount = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Imports every user in the given file and appends them to users.json.
+     * Files ending in ".json" are read as an array of users; anything else is read as
+     * CSV with the columns name,password[,user_id]. A first row whose every column is the column
+     * name in that position (case-insensitive) is taken as a header. CSV fields may be
+     * double-quoted to contain commas or quotes ("" for a literal quote), but not line breaks.
+     * Users whose name or user ID already exists, in users.json or earlier in the import, are
+     * skipped so that login stays unambiguous.
+     *
+     * users.json stays exclusively locked for the whole import, so running CLI instances wait
+     * rather than writing over the imported users.
+     *
+     * @return the number of users imported.
+     */
+    public int importUsers(File source) throws IOException {
+        long startNanos = System.nanoTime();
+        int imported = userDb.update(stale -> streamImport(source, startNanos));
+
+        double seconds = Math.max((System.nanoTime() - startNanos) / 1_000_000_000.0, 0.001);
+        System.out.printf("Imported %d users in %.1fs (%.0f users/s, %d workers, BCrypt cost %d).%n",
+                imported, seconds, imported / seconds, workerCount, bcryptCost);
+        return imported;
+    }
+
+    private int streamImport(File source, long startNanos) throws IOException {
+        File usersFile = userDb.getFile();
+        File tempFile = new File(usersFile.getPath() + ".import");
+
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+        // Keeps at most a couple of hashes queued per worker so memory stays flat on large files
+        Deque<Future<User>> inFlight = new ArrayDeque<>();
+        int window = workerCount * 2;
+        int imported = 0;
+        int skipped = 0;
+        Set<String> takenNames = new HashSet<>();
+        Set<String> takenIds = new HashSet<>();
+
+        try (CloseableIterator incoming = openSource(source);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(tempFile, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            copyExistingUsers(usersFile, generator, takenNames, takenIds);
+
+            while (incoming.hasNext()) {
+                User pending = incoming.next();
+                if (!takenNames.add(pending.getName())
+                        || (pending.getUserId() != null && !pending.getUserId().isEmpty()
+                        && !takenIds.add(pending.getUserId()))) {
+                    System.out.println("Skipping duplicate user: " + pending.getName());
+                    skipped++;
+                    continue;
+                }
+                inFlight.addLast(workers.submit(() -> hashUser(pending)));
+                if (inFlight.size() >= window) {
+                    generator.writeObject(await(inFlight.removeFirst()));
+                    imported = reportProgress(imported + 1, startNanos);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                generator.writeObject(await(inFlight.removeFirst()));
+                imported = reportProgress(imported + 1, startNanos);
+            }
+            generator.writeEndArray();
+        } catch (UncheckedIOException ex) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw ex.getCause();
+        } catch (RuntimeJsonMappingException ex) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw new IOException("Malformed user in " + source + ": " + ex.getMessage(), ex);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw ex;
+        } finally {
+            workers.shutdownNow();
+        }
+
+        try {
+            userDb.replaceWith(tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " duplicate users.");
+        }
+        return imported;
+    }
+
+    private User hashUser(User user) {
+        user.setHashedPassword(UserServiceUtil.hashPassword(user.getPassword(), bcryptCost));
+        // Never persist the plain-text password of an imported user
+        user.setPassword(null);
+        if (user.getTicketsBooked() == null) {
+            user.setTicketsBooked(new ArrayList<>());
+        }
+        if (user.getUserId() == null || user.getUserId().isEmpty()) {
+            user.setUserId(UUID.randomUUID().toString());
+        }
+        return user;
+    }
+
+    private User await(Future<User> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error hashing password: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private int reportProgress(int imported, long startNanos) {
+        if (imported % PROGRESS_INTERVAL == 0) {
+            double seconds = Math.max((System.nanoTime() - startNanos) / 1_000_000_000.0, 0.001);
+            System.out.printf("Imported %d users (%.0f users/s)%n", imported, imported / seconds);
+        }
+        return imported;
+    }
+
+    private void copyExistingUsers(File usersFile, JsonGenerator generator,
+                                   Set<String> takenNames, Set<String> takenIds) throws IOException {
+        if (!usersFile.exists()) {
+            return;
+        }
+        try (MappingIterator<User> existing = objectMapper.readerFor(User.class).readValues(usersFile)) {
+            while (existing.hasNext()) {
+                User user = existing.next();
+                takenNames.add(user.getName());
+                takenIds.add(user.getUserId());
+                generator.writeObject(user);
+            }
+        }
+    }
+
+    private CloseableIterator openSource(File source) throws IOException {
+        if (source.getName().toLowerCase().endsWith(".json")) {
+            MappingIterator<User> users = objectMapper.readerFor(User.class).readValues(source);
+            return new CloseableIterator() {
+                public boolean hasNext() { return users.hasNext(); }
+                public User next() { return users.next(); }
+                public void close() throws IOException { users.close(); }
+            };
+        }
+        return new CsvUserIterator(Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8));
+    }
+
+    private interface CloseableIterator extends Iterator<User>, AutoCloseable {
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * Reads one user per CSV line (name,password[,user_id]), skipping blank lines and a header row.
+     * Quoted fields may contain commas and doubled quotes, but not line breaks.
+     */
+    private static class CsvUserIterator implements CloseableIterator {
+
+        private static final List<String> COLUMNS = List.of("name", "password", "user_id");
+
+        private final BufferedReader reader;
+        private User nextUser;
+        private int lineNumber;
+
+        CsvUserIterator(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            List<String> first = nextColumns();
+            if (first != null && isHeader(first)) {
+                first = nextColumns();
+            }
+            nextUser = toUser(first);
+        }
+
+        private static boolean isHeader(List<String> columns) {
+            if (columns.size() < 2 || columns.size() > COLUMNS.size()) {
+                return false;
+            }
+            for (int i = 0; i < columns.size(); i++) {
+                if (!columns.get(i).equalsIgnoreCase(COLUMNS.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void advance() throws IOException {
+            nextUser = toUser(nextColumns());
+        }
+
+        /**
+         * Returns the columns of the next non-blank line, or null at the end of the file.
+         */
+        private List<String> nextColumns() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.isBlank()) {
+                    return parseLine(line);
+                }
+            }
+            return null;
+        }
+
+        private User toUser(List<String> columns) throws IOException {
+            if (columns == null) {
+                return null;
+            }
+            if (columns.size() < 2) {
+                throw new IOException("Malformed CSV line " + lineNumber + ": expected name,password[,user_id]");
+            }
+            String userId = columns.size() > 2 ? columns.get(2) : null;
+            return new User(columns.get(0), columns.get(1), null, new ArrayList<>(), userId);
+        }
+
+        /**
+         * Splits one CSV line. Unquoted fields are trimmed; quoted fields are kept as written.
+         */
+        private List<String> parseLine(String line) throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean inQuotes = false;
+            boolean wasQuoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (inQuotes) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        inQuotes = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"' && field.toString().isBlank()) {
+                    field.setLength(0);
+                    inQuotes = true;
+                    wasQuoted = true;
+                } else if (c == ',') {
+                    fields.add(wasQuoted ? field.toString() : field.toString().trim());
+                    field.setLength(0);
+                    wasQuoted = false;
+                } else if (!wasQuoted || !Character.isWhitespace(c)) {
+                    field.append(c);
+                }
+            }
+            if (inQuotes) {
+                throw new IOException("Malformed CSV line " + lineNumber + ": unterminated quoted field");
+            }
+            fields.add(wasQuoted ? field.toString() : field.toString().trim());
+            return fields;
+        }
+
+        public boolean hasNext() {
+            return nextUser != null;
+        }
+
+        public User next() {
+            if (nextUser == null) {
+                throw new NoSuchElementException();
+            }
+            User current = nextUser;
+            try {
+                advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return current;
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ticket.booking.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A JSON file in localDb that several CLI processes can share safely.
+ *
+ * Every file has a sidecar "<file>.lock" that is locked with a {@link FileChannel} lock (shared
+ * for reads, exclusive for writes) and holds a version stamp that is bumped on every write.
+ * A writer whose last read is older than the stamp on disk is told it is stale, so it can reload
+ * and re-apply only its own change instead of overwriting another process's work.
+ *
+ * There is one stamp per file, not per entity: each file is a single JSON document, so a stale
+ * writer rereads the whole file and only its re-applied change is scoped to the entities it
+ * touched. Writes go to a temp file that is then moved over the data file, so a crash mid-write
+ * leaves the previous contents intact.
+ */
+public class LocalDbFile {
+
+    /**
+     * Work done while the exclusive lock is held.
+     */
+    public interface LockedUpdate<R> {
+        /**
+         * @param stale true if another process has written the file since it was last read here.
+         */
+        R apply(boolean stale) throws IOException;
+    }
+
+    /**
+     * Work done on a streaming parser over the file while the shared lock is held.
+     */
+    public interface StreamingRead<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    // FileChannel locks are per process, so threads in this JVM also queue on a monitor per file
+    private static final Map<String, Object> monitors = new ConcurrentHashMap<>();
+
+    private final File dataFile;
+    private final Path lockPath;
+    private final ObjectMapper objectMapper;
+    private final Object monitor;
+    private long loadedVersion = -1;
+    private boolean written;
+
+    public LocalDbFile(String path, ObjectMapper objectMapper) {
+        this.dataFile = new File(path);
+        this.lockPath = new File(path + ".lock").toPath();
+        this.objectMapper = objectMapper;
+        this.monitor = monitors.computeIfAbsent(dataFile.getAbsolutePath(), key -> new Object());
+    }
+
+    public File getFile() {
+        return dataFile;
+    }
+
+    /**
+     * Reads the file under a shared lock and remembers the version that was read.
+     *
+     * @param emptyValue Supplies the value to use when the file does not exist yet.
+     */
+    public <T> T read(TypeReference<T> type, Supplier<T> emptyValue) throws IOException {
+        synchronized (monitor) {
+            try (FileChannel channel = openLockChannel();
+                 FileLock ignored = channel.lock(0, Long.MAX_VALUE, true)) {
+                loadedVersion = readVersion(channel);
+                return readData(type, emptyValue);
+            }
+        }
+    }
+
+    /**
+     * Streams the file under a shared lock without binding it as a whole. Unlike {@link #read},
+     * this does not record a loaded version, since the caller keeps no copy of the file.
+     *
+     * @param emptyValue Supplies the result to use when the file does not exist yet.
+     */
+    public <T> T stream(StreamingRead<T> reader, Supplier<T> emptyValue) throws IOException {
+        synchronized (monitor) {
+            try (FileChannel channel = openLockChannel();
+                 FileLock ignored = channel.lock(0, Long.MAX_VALUE, true)) {
+                if (!dataFile.exists()) {
+                    return emptyValue.get();
+                }
+                try (JsonParser parser = objectMapper.getFactory().createParser(dataFile)) {
+                    return reader.read(parser);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs an update under the exclusive lock. Inside the update, {@link #reload}, {@link #write}
+     * and {@link #replaceWith} may be used; the version stamp is bumped only if something was written.
+     */
+    public <R> R update(LockedUpdate<R> update) throws IOException {
+        synchronized (monitor) {
+            try (FileChannel channel = openLockChannel();
+                 FileLock ignored = channel.lock()) {
+                long diskVersion = readVersion(channel);
+                boolean stale = diskVersion != loadedVersion;
+                written = false;
+                R result = update.apply(stale);
+                if (written) {
+                    diskVersion++;
+                    writeVersion(channel, diskVersion);
+                }
+                if (stale || written) {
+                    loadedVersion = diskVersion;
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Rereads the file from inside {@link #update}, after being told the local copy is stale.
+     */
+    public <T> T reload(TypeReference<T> type, Supplier<T> emptyValue) throws IOException {
+        return readData(type, emptyValue);
+    }
+
+    /**
+     * Writes the file from inside {@link #update}.
+     */
+    public void write(Object value) throws IOException {
+        File tempFile = new File(dataFile.getPath() + ".tmp");
+        try {
+            objectMapper.writeValue(tempFile, value);
+            replaceWith(tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Moves a fully written file over the data file from inside {@link #update}, e.g. after a
+     * streamed write. The file must be in the same directory so the move can be atomic.
+     */
+    public void replaceWith(File writtenFile) throws IOException {
+        try {
+            Files.move(writtenFile.toPath(), dataFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(writtenFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        written = true;
+    }
+
+    private <T> T readData(TypeReference<T> type, Supplier<T> emptyValue) throws IOException {
+        if (!dataFile.exists()) {
+            return emptyValue.get();
+        }
+        return objectMapper.readValue(dataFile, type);
+    }
+
+    private FileChannel openLockChannel() throws IOException {
+        return FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private long readVersion(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        if (channel.read(buffer, 0) < Long.BYTES) {
+            return 0;
+        }
+        return buffer.flip().getLong();
+    }
+
+    private void writeVersion(FileChannel channel, long version) throws IOException {
+        channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, version), 0);
+        channel.force(false);
+    }
+}
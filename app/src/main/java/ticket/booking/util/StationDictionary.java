@@ -0,0 +1,78 @@
+package ticket.booking.util;
+
+import java.util.*;
+
+/**
+ * Process-wide dictionary that maps station names to compact int IDs.
+ *
+ * IDs are assigned case-insensitively, so "Delhi" and "delhi" share an ID for search. Strings
+ * are shared per exact spelling only: every train and ticket that spells a station the same way
+ * holds the same instance, and no spelling is ever rewritten.
+ */
+public class StationDictionary {
+
+    public static final int UNKNOWN = -1;
+
+    private static final Map<String, Integer> idsByKey = new HashMap<>();
+    private static final Map<String, String> spellings = new HashMap<>();
+
+    /**
+     * Returns the ID for a station name, registering it if it has not been seen before.
+     *
+     * @param name The station name in any case.
+     * @return The station ID.
+     */
+    public static synchronized int idOf(String name) {
+        return idsByKey.computeIfAbsent(name.toLowerCase(), key -> idsByKey.size());
+    }
+
+    /**
+     * Looks up a station without registering it, e.g. for user-entered search terms.
+     *
+     * @param name The station name in any case.
+     * @return The station ID, or {@link #UNKNOWN} if no loaded train serves it.
+     */
+    public static synchronized int lookup(String name) {
+        if (name == null) {
+            return UNKNOWN;
+        }
+        Integer id = idsByKey.get(name.toLowerCase());
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * Returns the shared String instance for this exact spelling of a station name.
+     */
+    public static synchronized String canonical(String name) {
+        return name == null ? null : spellings.computeIfAbsent(name, spelling -> spelling);
+    }
+
+    /**
+     * Interns a station sequence into an array of IDs, replacing each name in the list
+     * with the shared instance of the same spelling.
+     */
+    public static int[] encode(List<String> stations) {
+        if (stations == null) {
+            return new int[0];
+        }
+        int[] ids = new int[stations.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = idOf(stations.get(i));
+            stations.set(i, canonical(stations.get(i)));
+        }
+        return ids;
+    }
+
+    /**
+     * Rebuilds a station-keyed map so its keys are shared instances. Keys are not merged:
+     * spellings that differ only in case stay separate entries.
+     */
+    public static <V> Map<String, V> canonicalKeys(Map<String, V> byStation) {
+        if (byStation == null) {
+            return null;
+        }
+        Map<String, V> canonicalMap = new LinkedHashMap<>(byStation.size() * 2);
+        byStation.forEach((station, value) -> canonicalMap.put(canonical(station), value));
+        return canonicalMap;
+    }
+}
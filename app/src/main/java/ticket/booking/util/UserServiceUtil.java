@@ -14,6 +14,17 @@ public class UserServiceUtil {
         return BCrypt.hashpw(plainPassword, BCrypt.gensalt());
     }
 
+    /**
+     * Hashes a plain-text password using BCrypt with an explicit work factor.
+     *
+     * @param plainPassword The raw user-entered password.
+     * @param logRounds     The BCrypt cost (log2 of the number of rounds), between 4 and 30.
+     * @return The hashed password.
+     */
+    public static String hashPassword(String plainPassword, int logRounds) {
+        return BCrypt.hashpw(plainPassword, BCrypt.gensalt(logRounds));
+    }
+
     /**
      * Verifies if the entered plain password matches the hashed one.
      *
@@ -0,0 +1,137 @@
+package ticket.booking.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BookingHistoryServiceTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private BookingHistoryService historyService;
+
+    @Before public void writeUsers() throws IOException {
+        File usersFile = new File(folder.getRoot(), "users.json");
+
+        Train morning = train("morning");
+        Train evening = train("evening");
+        List<Ticket> alice = new ArrayList<>();
+        // Booked out of travel order, with two tickets on the same day to exercise the ID tie-break
+        alice.add(ticket("a5", "2026-03-05", evening, "alice"));
+        alice.add(ticket("a1", "2026-03-01", morning, "alice"));
+        alice.add(ticket("a3b", "2026-03-03", evening, "alice"));
+        alice.add(ticket("a4", "2026-03-04", morning, "alice"));
+        alice.add(ticket("a3a", "2026-03-03", morning, "alice"));
+        alice.add(ticket("a2", "2026-03-02", evening, "alice"));
+        List<Ticket> bob = new ArrayList<>();
+        bob.add(ticket("b1", "2026-03-01", morning, "bob"));
+
+        List<User> users = List.of(
+                new User("bob", null, UserServiceUtil.hashPassword("bobpw", 4), bob, "bob"),
+                new User("alice", null, UserServiceUtil.hashPassword("alicepw", 4), alice, "alice"));
+        new ObjectMapper().writeValue(usersFile, users);
+        historyService = new BookingHistoryService(usersFile.getPath());
+    }
+
+    private static Train train(String trainId) {
+        return new Train(trainId, "1", new ArrayList<>(List.of(new ArrayList<>(List.of(0, 0)))),
+                new LinkedHashMap<>(Map.of("a", "10:00:00", "b", "11:00:00")), new ArrayList<>(List.of("a", "b")));
+    }
+
+    private static Ticket ticket(String ticketId, String date, Train train, String userId) {
+        return new Ticket("a", "b", date, train, ticketId, userId, train.getStationTimes(), 0, 0);
+    }
+
+    private static List<String> ids(BookingHistoryService.Page page) {
+        List<String> ids = new ArrayList<>();
+        page.getTickets().forEach(ticket -> ids.add(ticket.getTicketId()));
+        return ids;
+    }
+
+    @Test public void pagesFollowTheCursorInTravelOrder() throws IOException {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            BookingHistoryService.Page page = historyService.fetchPage("alice", "alicepw", cursor, 4,
+                    null, null, null).orElseThrow();
+            assertTrue(page.getTickets().size() <= 4);
+            seen.addAll(ids(page));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(2, pages);
+        assertEquals(List.of("a1", "a2", "a3a", "a3b", "a4", "a5"), seen);
+    }
+
+    @Test public void lastFullPageHasNoCursor() throws IOException {
+        BookingHistoryService.Page page = historyService.fetchPage("alice", "alicepw", null, 6,
+                null, null, null).orElseThrow();
+        assertEquals(6, page.getTickets().size());
+        assertFalse(page.hasMore());
+    }
+
+    @Test public void filtersByTrainAndDateRangeAcrossPages() throws IOException {
+        BookingHistoryService.Page first = historyService.fetchPage("alice", "alicepw", null, 1,
+                LocalDate.parse("2026-03-02"), LocalDate.parse("2026-03-04"), "EVENING").orElseThrow();
+        assertEquals(List.of("a2"), ids(first));
+
+        BookingHistoryService.Page second = historyService.fetchPage("alice", "alicepw", first.getNextCursor(), 1,
+                LocalDate.parse("2026-03-02"), LocalDate.parse("2026-03-04"), "EVENING").orElseThrow();
+        assertEquals(List.of("a3b"), ids(second));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test public void onlyTheUsersOwnTicketsAreReturned() throws IOException {
+        BookingHistoryService.Page page = historyService.fetchPage("bob", "bobpw", null, 10,
+                null, null, null).orElseThrow();
+        assertEquals(List.of("b1"), ids(page));
+    }
+
+    @Test public void wrongPasswordReturnsNoPage() throws IOException {
+        assertFalse(historyService.fetchPage("alice", "bobpw", null, 10, null, null, null).isPresent());
+        assertFalse(historyService.fetchPage("carol", "alicepw", null, 10, null, null, null).isPresent());
+    }
+
+    @Test public void travelDatesAreReadInTheLocalZone() throws IOException {
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+        try {
+            Train train = train("night");
+            List<Ticket> tickets = new ArrayList<>();
+            // Date.toString() from an older booking: "IST" must read as India, not Israel or Ireland
+            tickets.add(ticket("legacy", "Thu Mar 05 20:00:00 IST 2026", train, "kiran"));
+            tickets.add(ticket("late", "2026-03-05T23:30:00+05:30", train, "kiran"));
+            tickets.add(ticket("next-day", "2026-03-05T19:00:00Z", train, "kiran"));
+            File usersFile = new File(folder.getRoot(), "india.json");
+            new ObjectMapper().writeValue(usersFile, List.of(
+                    new User("kiran", null, UserServiceUtil.hashPassword("kiranpw", 4), tickets, "kiran")));
+
+            BookingHistoryService.Page page = new BookingHistoryService(usersFile.getPath()).fetchPage(
+                    "kiran", "kiranpw", null, 10, LocalDate.parse("2026-03-05"), LocalDate.parse("2026-03-05"), null)
+                    .orElseThrow();
+            assertEquals(List.of("legacy", "late"), ids(page));
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedCursorIsRejected() throws IOException {
+        historyService.fetchPage("alice", "alicepw", "not-a-cursor", 10, null, null, null);
+    }
+}
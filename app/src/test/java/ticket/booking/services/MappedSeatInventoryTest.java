@@ -0,0 +1,116 @@
+package ticket.booking.services;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.Train;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MappedSeatInventoryTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private String path;
+
+    @Before public void setPath() {
+        path = new File(folder.getRoot(), "seats.bin").getPath();
+    }
+
+    private static Train train(String trainId, List<List<Integer>> seats) {
+        List<List<Integer>> rows = new ArrayList<>();
+        seats.forEach(row -> rows.add(new ArrayList<>(row)));
+        return new Train(trainId, "1", rows, new LinkedHashMap<>(Map.of("a", "10:00:00", "b", "11:00:00")),
+                new ArrayList<>(List.of("a", "b")));
+    }
+
+    @Test public void seatBookedThroughOneInstanceIsTakenInTheOther() throws IOException {
+        MappedSeatInventory first = new MappedSeatInventory(path);
+        MappedSeatInventory second = new MappedSeatInventory(path);
+        first.register(train("t1", List.of(List.of(0, 0, 0), List.of(0, 0, 0))));
+
+        assertTrue(second.book("t1", 1, 2));
+        assertFalse(first.book("t1", 1, 2));
+
+        assertTrue(first.release("t1", 1, 2));
+        assertTrue(second.book("t1", 1, 2));
+    }
+
+    @Test public void registerIsIgnoredWhenAnotherInstanceAddedTheTrain() throws IOException {
+        MappedSeatInventory first = new MappedSeatInventory(path);
+        MappedSeatInventory second = new MappedSeatInventory(path);
+        first.register(train("t1", List.of(List.of(0, 0))));
+        assertTrue(first.book("t1", 0, 0));
+
+        // Registering again from a stale matrix must not reset the booked seat
+        second.register(train("t1", List.of(List.of(0, 0))));
+        assertFalse(second.book("t1", 0, 0));
+        assertTrue(second.book("t1", 0, 1));
+    }
+
+    @Test public void registerRejectsAChangedSeatLayout() throws IOException {
+        MappedSeatInventory first = new MappedSeatInventory(path);
+        MappedSeatInventory second = new MappedSeatInventory(path);
+        first.register(train("t1", List.of(List.of(0, 0), List.of(0))));
+
+        for (List<List<Integer>> layout : List.of(List.of(List.of(0, 0)), List.of(List.of(0, 0), List.of(0, 0)))) {
+            try {
+                second.register(train("t1", layout));
+                fail("Expected a layout mismatch for " + layout);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().contains("t1"));
+            }
+        }
+        second.register(train("t1", List.of(List.of(1, 1), List.of(1))));
+    }
+
+    @Test public void trainsRegisteredByEitherInstanceAreVisibleToBoth() throws IOException {
+        MappedSeatInventory first = new MappedSeatInventory(path);
+        MappedSeatInventory second = new MappedSeatInventory(path);
+        first.register(train("t1", List.of(List.of(0))));
+        second.register(train("t2", List.of(List.of(0, 1))));
+
+        assertTrue(first.book("T2", 0, 0));
+        assertFalse(first.book("t2", 0, 1));
+        assertTrue(second.book("t1", 0, 0));
+        assertFalse(first.book("unknown", 0, 0));
+    }
+
+    @Test public void raggedRowsHaveNoPhantomSeats() throws IOException {
+        MappedSeatInventory inventory = new MappedSeatInventory(path);
+        inventory.register(train("t1", List.of(List.of(0, 0), List.of(0, 0, 0, 0), List.of(0))));
+
+        assertFalse(inventory.book("t1", 0, 2));
+        assertFalse(inventory.book("t1", 2, 1));
+        assertFalse(inventory.book("t1", 3, 0));
+        assertFalse(inventory.release("t1", 0, 2));
+        assertTrue(inventory.book("t1", 1, 3));
+        assertTrue(inventory.book("t1", 2, 0));
+    }
+
+    @Test public void copyIntoRebuildsSeatsAndCounters() throws IOException {
+        MappedSeatInventory first = new MappedSeatInventory(path);
+        MappedSeatInventory second = new MappedSeatInventory(path);
+        // 70 seats in the second row, so it spans two packed words
+        List<Integer> wideRow = new ArrayList<>(Collections.nCopies(70, 0));
+        first.register(train("t1", List.of(List.of(1, 0), wideRow)));
+        assertTrue(second.book("t1", 1, 0));
+        assertTrue(second.book("t1", 1, 63));
+        assertTrue(second.book("t1", 1, 69));
+
+        Train copy = train("t1", List.of());
+        first.copyInto(copy);
+
+        assertEquals(List.of(1, 0), copy.getSeats().get(0));
+        assertEquals(70, copy.getSeats().get(1).size());
+        assertEquals(1, (int) copy.getSeats().get(1).get(63));
+        assertEquals(1, copy.getAvailability().getFreeSeatsInRow(0));
+        assertEquals(67, copy.getAvailability().getFreeSeatsInRow(1));
+        assertEquals(68, copy.getAvailability().getFreeSeats());
+    }
+}
@@ -0,0 +1,147 @@
+package ticket.booking.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bulk train operations. Each UserBookingService instance stands in for a separate CLI process;
+ * one that loaded users.json before another wrote it sees a stale copy.
+ */
+public class UserBookingServiceTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private String usersPath;
+    private String trainsPath;
+
+    @Before public void writeFiles() throws IOException {
+        usersPath = new File(folder.getRoot(), "users.json").getPath();
+        trainsPath = new File(folder.getRoot(), "trains.json").getPath();
+        List<Train> trains = List.of(
+                train("old", List.of(List.of(0, 0, 0), List.of(0, 0, 0))),
+                train("new", List.of(List.of(0, 0, 0), List.of(0, 0, 0))),
+                train("tiny", List.of(List.of(0))));
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.writeValue(new File(trainsPath), trains);
+        objectMapper.writeValue(new File(usersPath), List.of(
+                new User("ann", null, UserServiceUtil.hashPassword("annpw", 4), new ArrayList<>(), "ann"),
+                new User("ben", null, UserServiceUtil.hashPassword("benpw", 4), new ArrayList<>(), "ben")));
+    }
+
+    private static Train train(String trainId, List<List<Integer>> seats) {
+        List<List<Integer>> rows = new ArrayList<>();
+        seats.forEach(row -> rows.add(new ArrayList<>(row)));
+        return new Train(trainId, "1", rows, new LinkedHashMap<>(Map.of("a", "10:00:00", "b", "11:00:00")),
+                new ArrayList<>(List.of("a", "b")));
+    }
+
+    private UserBookingService session(String name) throws IOException {
+        return new UserBookingService(new User(name, name + "pw", null, new ArrayList<>(), null), usersPath, trainsPath);
+    }
+
+    private void book(UserBookingService service, String trainId, int row, int col) throws IOException {
+        Train train = new TrainService(trainsPath).getTrain(trainId).orElseThrow();
+        assertTrue(service.bookTrainSeat(train, row, col));
+    }
+
+    private List<List<Integer>> seats(String trainId) throws IOException {
+        return new TrainService(trainsPath).getTrain(trainId).orElseThrow().getSeats();
+    }
+
+    private List<Ticket> ticketsOnDisk(String trainId) throws IOException {
+        return new UserBookingService(null, usersPath, trainsPath).getTicketsForTrain(trainId);
+    }
+
+    @Test public void ticketIndexFollowsBookingsAndCancellations() throws IOException {
+        UserBookingService ann = session("ann");
+        book(ann, "old", 0, 0);
+        book(ann, "old", 0, 1);
+        book(ann, "new", 1, 1);
+
+        assertEquals(2, ann.getTicketsForTrain("OLD").size());
+        assertEquals(1, ann.getTicketsForTrain("new").size());
+
+        assertTrue(ann.cancelBooking(ann.getTicketsForTrain("old").get(0).getTicketId()));
+        assertEquals(1, ann.getTicketsForTrain("old").size());
+        assertTrue(ann.getTicketsForTrain("missing").isEmpty());
+    }
+
+    @Test public void cancelTrainBookingsIncludesTicketsBookedByAnotherProcess() throws IOException {
+        UserBookingService ann = session("ann");
+        book(ann, "old", 0, 0);
+        UserBookingService stale = session("ann");
+        // Booked after the stale session loaded users.json
+        book(session("ben"), "old", 1, 2);
+
+        assertEquals(2, stale.cancelTrainBookings("old"));
+        assertTrue(ticketsOnDisk("old").isEmpty());
+        assertEquals(List.of(List.of(0, 0, 0), List.of(0, 0, 0)), seats("old"));
+    }
+
+    @Test public void cancelTrainBookingsKeepsTicketsWhenSeatsCannotBeFreed() throws IOException {
+        UserBookingService ann = session("ann");
+        book(ann, "old", 0, 0);
+        // A directory where the temp file should go makes the next trains.json write fail
+        assertTrue(new File(trainsPath + ".tmp").mkdir());
+
+        assertEquals(0, ann.cancelTrainBookings("old"));
+        assertEquals(1, ticketsOnDisk("old").size());
+        assertEquals(1, ann.getTicketsForTrain("old").size());
+        assertEquals(1, (int) seats("old").get(0).get(0));
+    }
+
+    @Test public void rescheduleMovesTicketsBookedByAnotherProcess() throws IOException {
+        UserBookingService stale = session("ann");
+        book(session("ben"), "old", 0, 1);
+        book(session("ann"), "old", 1, 0);
+
+        assertEquals(2, stale.rescheduleTrainBookings("old", "new"));
+        assertTrue(ticketsOnDisk("old").isEmpty());
+        assertEquals(2, ticketsOnDisk("new").size());
+        assertEquals(2, stale.getTicketsForTrain("new").size());
+        assertEquals(List.of(List.of(0, 0, 0), List.of(0, 0, 0)), seats("old"));
+        // Both tickets keep their row and column
+        assertEquals(List.of(List.of(0, 1, 0), List.of(1, 0, 0)), seats("new"));
+    }
+
+    @Test public void rescheduleTakesFirstFreeSeatAndLeavesOverflowOnOldTrain() throws IOException {
+        UserBookingService ann = session("ann");
+        book(ann, "old", 0, 0);
+        book(ann, "old", 1, 2);
+
+        assertEquals(1, ann.rescheduleTrainBookings("old", "tiny"));
+        assertEquals(1, ticketsOnDisk("tiny").size());
+        List<Ticket> left = ticketsOnDisk("old");
+        assertEquals(1, left.size());
+        assertEquals(List.of(List.of(1)), seats("tiny"));
+        // The ticket that did not fit still holds its old seat
+        assertEquals(1, (int) seats("old").get(left.get(0).getSeatRow()).get(left.get(0).getSeatCol()));
+    }
+
+    @Test public void rescheduleMovesSeatsBackWhenUsersCannotBeSaved() throws IOException {
+        UserBookingService ann = session("ann");
+        book(ann, "old", 0, 0);
+        book(ann, "old", 0, 1);
+        assertTrue(new File(usersPath + ".tmp").mkdir());
+
+        assertEquals(0, ann.rescheduleTrainBookings("old", "new"));
+        assertEquals(2, ticketsOnDisk("old").size());
+        assertEquals(2, ann.getTicketsForTrain("old").size());
+        assertTrue(ann.getTicketsForTrain("new").isEmpty());
+        assertEquals(List.of(List.of(1, 1, 0), List.of(0, 0, 0)), seats("old"));
+        assertEquals(List.of(List.of(0, 0, 0), List.of(0, 0, 0)), seats("new"));
+    }
+}
@@ -0,0 +1,117 @@
+package ticket.booking.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.User;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class UserImportServiceTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private File usersFile;
+    private UserImportService importService;
+
+    @Before public void writeUsers() throws IOException {
+        usersFile = new File(folder.getRoot(), "users.json");
+        objectMapper.writeValue(usersFile, List.of(
+                new User("ann", null, UserServiceUtil.hashPassword("annpw", 4), new ArrayList<>(), "a1")));
+        importService = new UserImportService(usersFile.getPath(), 4);
+    }
+
+    private File source(String name, String... lines) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), List.of(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private Map<String, User> usersByName() throws IOException {
+        Map<String, User> byName = new LinkedHashMap<>();
+        objectMapper.readValue(usersFile, new TypeReference<List<User>>() {})
+                .forEach(user -> byName.put(user.getName(), user));
+        return byName;
+    }
+
+    @Test public void importsQuotedFieldsEscapesAndBlankLines() throws IOException {
+        File csv = source("users.csv",
+                "name,password,user_id",
+                "\"Smith, Jo\",\"pa\"\"ss\",s1",
+                "",
+                "   ",
+                "  plain  ,  pw  ",
+                "\" spaced \",x");
+
+        assertEquals(3, importService.importUsers(csv));
+        Map<String, User> users = usersByName();
+        assertEquals(List.of("ann", "Smith, Jo", "plain", " spaced "), new ArrayList<>(users.keySet()));
+        assertEquals("s1", users.get("Smith, Jo").getUserId());
+        assertTrue(UserServiceUtil.checkPassword("pa\"ss", users.get("Smith, Jo").getHashedPassword()));
+        assertTrue(UserServiceUtil.checkPassword("pw", users.get("plain").getHashedPassword()));
+        assertNotNull(users.get("plain").getUserId());
+    }
+
+    @Test public void plainTextPasswordsAreNotStored() throws IOException {
+        File csv = source("users.csv", "zed,very-secret-1");
+        File json = new File(folder.getRoot(), "users-in.json");
+        objectMapper.writeValue(json, List.of(new User("yan", "very-secret-2", null, null, null)));
+
+        assertEquals(1, importService.importUsers(csv));
+        assertEquals(1, importService.importUsers(json));
+        for (User user : usersByName().values()) {
+            assertNull(user.getPassword());
+            assertNotNull(user.getHashedPassword());
+        }
+        String stored = new String(Files.readAllBytes(usersFile.toPath()), StandardCharsets.UTF_8);
+        assertFalse(stored.contains("very-secret"));
+    }
+
+    @Test public void skipsDuplicateNamesAndIds() throws IOException {
+        File csv = source("users.csv",
+                "ann,other,n1",
+                "bob,pw,a1",
+                "cat,pw,c1",
+                "cat,pw2,c2",
+                "dan,pw,c1");
+
+        assertEquals(1, importService.importUsers(csv));
+        Map<String, User> users = usersByName();
+        assertEquals(List.of("ann", "cat"), new ArrayList<>(users.keySet()));
+        assertTrue(UserServiceUtil.checkPassword("annpw", users.get("ann").getHashedPassword()));
+        assertEquals("c1", users.get("cat").getUserId());
+    }
+
+    @Test public void headerIsRecognisedOnlyWhenEveryColumnMatches() throws IOException {
+        assertEquals(1, importService.importUsers(source("header.csv", "Name,PASSWORD", "zed,pw")));
+        // A first user who happens to be called "name" is still imported
+        assertEquals(2, importService.importUsers(source("noheader.csv", "name,secret,u1", "yan,pw")));
+        assertEquals(List.of("ann", "zed", "name", "yan"), new ArrayList<>(usersByName().keySet()));
+    }
+
+    @Test public void malformedLinesFailWithoutChangingUsers() throws IOException {
+        byte[] before = Files.readAllBytes(usersFile.toPath());
+        for (File csv : List.of(source("short.csv", "zed,pw", "broken"),
+                source("quote.csv", "zed,\"unterminated"))) {
+            try {
+                importService.importUsers(csv);
+                fail("Expected an IOException for " + csv.getName());
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().contains("Malformed CSV line"));
+            }
+        }
+        assertArrayEquals(before, Files.readAllBytes(usersFile.toPath()));
+        assertFalse(new File(usersFile.getPath() + ".import").exists());
+    }
+}
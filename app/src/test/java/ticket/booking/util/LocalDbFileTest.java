@@ -0,0 +1,86 @@
+package ticket.booking.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocalDbFileTest {
+
+    private static final TypeReference<List<String>> LIST_TYPE = new TypeReference<List<String>>() {};
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String path;
+
+    @Before public void setPath() {
+        path = new File(folder.getRoot(), "items.json").getPath();
+    }
+
+    @Test public void updateAfterReadIsNotStale() throws IOException {
+        LocalDbFile db = new LocalDbFile(path, objectMapper);
+        db.read(LIST_TYPE, ArrayList::new);
+        assertFalse(db.update(stale -> stale));
+    }
+
+    @Test public void writeByAnotherInstanceMakesReaderStale() throws IOException {
+        LocalDbFile first = new LocalDbFile(path, objectMapper);
+        LocalDbFile second = new LocalDbFile(path, objectMapper);
+        first.read(LIST_TYPE, ArrayList::new);
+        second.read(LIST_TYPE, ArrayList::new);
+
+        assertFalse(second.update(stale -> {
+            second.write(List.of("from second"));
+            return stale;
+        }));
+
+        assertTrue("first has not seen the second write", first.update(stale -> {
+            if (stale) {
+                List<String> items = first.reload(LIST_TYPE, ArrayList::new);
+                items.add("from first");
+                first.write(items);
+            }
+            return stale;
+        }));
+        assertEquals(List.of("from second", "from first"),
+                new LocalDbFile(path, objectMapper).read(LIST_TYPE, ArrayList::new));
+
+        // The first instance is up to date again, and the second is now behind
+        assertFalse(first.update(stale -> stale));
+        assertTrue(second.update(stale -> stale));
+    }
+
+    @Test public void updateWithoutWriteDoesNotBumpVersion() throws IOException {
+        LocalDbFile first = new LocalDbFile(path, objectMapper);
+        LocalDbFile second = new LocalDbFile(path, objectMapper);
+        first.read(LIST_TYPE, ArrayList::new);
+        second.read(LIST_TYPE, ArrayList::new);
+
+        second.update(stale -> null);
+        assertFalse(first.update(stale -> stale));
+    }
+
+    @Test public void writeReplacesFileWithoutLeavingTempFile() throws IOException {
+        LocalDbFile db = new LocalDbFile(path, objectMapper);
+        db.update(stale -> {
+            db.write(List.of("a"));
+            return null;
+        });
+        db.update(stale -> {
+            db.write(List.of("b"));
+            return null;
+        });
+        assertEquals(List.of("b"), db.read(LIST_TYPE, ArrayList::new));
+        assertFalse(new File(path + ".tmp").exists());
+    }
+}